@@ -0,0 +1,334 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Saves the users in the background.
+ * <p>
+ * Changes are recorded in the journal of the opened file right away. A save (requested explicitly or by the debounce
+ * timer after the last change) only syncs the journal, unless the journal got large: then a snapshot of the users is
+ * taken on the JavaFX thread and written to the file by a background thread, and the journal starts over. Saving to
+ * another file always writes a snapshot.
+ * <p>
+ * At most one write is in flight, saves requested meanwhile are coalesced into one write afterwards. All methods have
+ * to be called on the JavaFX thread, the status is reported on the JavaFX thread, too.
+ */
+public class AutoSaver {
+	private static final Duration DEBOUNCE = Duration.seconds(2);
+	private static final long MAX_JOURNAL_SIZE = 1 << 20;
+
+	private final Map<String, User> users;
+	private final Consumer<String> status;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "autosave");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final PauseTransition debounce = new PauseTransition(DEBOUNCE);
+	// only used by the background thread
+	private final Map<String, ExportHandler> handlers = new HashMap<>();
+	// the revisions of the TodoLists in the last snapshot written by the handler of a format, by format and uuid;
+	// the handler has them encoded in its cache, so they don’t have to be copied again while they don’t change
+	private final Map<String, Map<UUID, Long>> written = new HashMap<>();
+	private File target = null;
+	private Journal journal = null;
+	private boolean dirty = false;
+	private final Set<File> pending = new LinkedHashSet<>();
+	private CompletableFuture<IOException> writing = null;
+	private File writingFile = null;
+	private long writingStart = 0;
+	// the revisions of the TodoLists of the snapshot being written, null if only the journal is synced
+	private Map<UUID, Long> writingRevisions = null;
+	private boolean writingStubs = false;
+
+	/**
+	 * Instantiates a new AutoSaver.
+	 *
+	 * @param users  the users to be saved
+	 * @param status receives status messages
+	 */
+	public AutoSaver(Map<String, User> users, Consumer<String> status) {
+		this.users = users;
+		this.status = status;
+		this.debounce.setOnFinished(event -> {
+			if (this.target != null) {
+				this.save(this.target);
+			}
+		});
+	}
+
+	/**
+	 * Use the file the users were loaded from as target, its journal is continued.
+	 *
+	 * @param file the file
+	 * @throws IOException if the journal couldn’t be opened
+	 */
+	public void open(File file) throws IOException {
+		this.target = file;
+		this.journal = Journal.open(file);
+	}
+
+	/**
+	 * Gets target.
+	 *
+	 * @return the file that is saved automatically
+	 */
+	public File getTarget() {
+		return this.target;
+	}
+
+	/**
+	 * Sets target, a journal is started after the first snapshot is written to it.
+	 *
+	 * @param file the file that is saved automatically
+	 */
+	public void setTarget(File file) {
+		this.target = file;
+	}
+
+	/**
+	 * Gets journal.
+	 *
+	 * @return the journal or null
+	 */
+	public Journal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * The users changed, record the change and save after the debounce time.
+	 *
+	 * @param change writes the change to the journal
+	 */
+	public void changed(Consumer<Journal> change) {
+		if (this.journal != null) {
+			change.accept(this.journal);
+		}
+		this.dirty = true;
+		if (this.target != null) {
+			this.debounce.playFromStart();
+		}
+	}
+
+	/**
+	 * Save the users to a file, waits for the write in flight.
+	 *
+	 * @param file the file
+	 */
+	public void save(File file) {
+		if (file.equals(this.target)) {
+			this.debounce.stop();
+		}
+		if (this.writing != null) {
+			// several saves of the same file are written once
+			this.pending.add(file);
+			return;
+		}
+		this.start(file);
+	}
+
+	/**
+	 * Start a write
+	 *
+	 * @param file the file
+	 */
+	private void start(File file) {
+		boolean isTarget = file.equals(this.target);
+		if (isTarget) {
+			this.dirty = false;
+		}
+		CompletableFuture<IOException> future;
+		if (isTarget && this.journal != null && this.journal.isHealthy() && this.journal.getSize() < MAX_JOURNAL_SIZE) {
+			Journal journal = this.journal;
+			future = CompletableFuture.supplyAsync(() -> {
+				try {
+					journal.sync();
+					return null;
+				} catch (IOException e) {
+					return e;
+				}
+			}, this.executor);
+			this.writingRevisions = null;
+		} else {
+			Map<String, User> snapshot = this.snapshot(file);
+			if (isTarget && this.journal != null) {
+				this.journal.rotate();
+			}
+			this.status.accept("Saving to '" + file + "' ...");
+			future = CompletableFuture.supplyAsync(() -> this.write(snapshot, file), this.executor);
+		}
+		this.writing = future;
+		this.writingFile = file;
+		this.writingStart = System.nanoTime();
+		future.thenAccept(result -> Platform.runLater(() -> this.finished(future, result)));
+	}
+
+	/**
+	 * Copy the users, so they can be written while they are changed
+	 * <p>
+	 * Only the TodoLists that changed since the last snapshot written in the format of the file are copied, the others
+	 * are replaced by stubs: the handler takes them from its cache. The copies are dropped once they are written, the
+	 * revisions of the TodoLists are kept in writingRevisions until then.
+	 *
+	 * @param file the file the snapshot is written to
+	 * @return the copy
+	 */
+	private Map<String, User> snapshot(File file) {
+		Map<UUID, Long> unchanged = this.written.getOrDefault(Controller.formatOf(file.getName()), Collections.emptyMap());
+		Map<String, User> snapshot = new TreeMap<>();
+		Map<UUID, Long> revisions = new HashMap<>();
+		boolean stubs = false;
+		for (Map.Entry<String, User> entry : this.users.entrySet()) {
+			User user = entry.getValue();
+			snapshot.put(entry.getKey(), user.copy(unchanged));
+			// the TodoLists of users that aren’t loaded are copied from the file unchanged, they aren’t cached
+			if (user.isLoaded()) {
+				for (TodoList list : user.getTodoLists()) {
+					revisions.put(list.getUuid(), list.getRevision());
+					stubs |= unchanged.containsKey(list.getUuid());
+				}
+			}
+		}
+		this.writingRevisions = revisions;
+		this.writingStubs = stubs;
+		return snapshot;
+	}
+
+	/**
+	 * Write a snapshot, runs on the background thread
+	 *
+	 * @param snapshot the users
+	 * @param file     the file
+	 * @return null or the error
+	 */
+	private IOException write(Map<String, User> snapshot, File file) {
+		ExportHandler handler = this.handlers.computeIfAbsent(Controller.formatOf(file.getName()), Controller::newHandler);
+		try {
+			handler.exportToFile(snapshot, file);
+			return null;
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			return e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+	}
+
+	/**
+	 * A write finished, report it and start the pending one
+	 *
+	 * @param future the write
+	 * @param error  null or the error
+	 */
+	private void finished(CompletableFuture<IOException> future, IOException error) {
+		if (future != this.writing) {
+			// already handled by flush()
+			return;
+		}
+		File file = this.writingFile;
+		Map<UUID, Long> revisions = this.writingRevisions;
+		this.writing = null;
+		this.writingFile = null;
+		this.writingRevisions = null;
+		if (revisions != null) {
+			// the cache of the handler only keeps the lists of a successful export
+			if (error == null) {
+				this.written.put(Controller.formatOf(file.getName()), revisions);
+			} else {
+				this.written.remove(Controller.formatOf(file.getName()));
+			}
+		}
+		if (error != null && revisions != null && this.writingStubs && error.getCause() instanceof IllegalStateException) {
+			// a stub wasn’t in the cache of the handler, write it again with all TodoLists copied
+			ErrorPrinter.printWarning("AutoSaver.finished > " + error.getCause().getMessage() + ", writing all TodoLists");
+			this.pending.add(file);
+		} else if (error != null) {
+			if (file.equals(this.target)) {
+				this.dirty = true;
+			}
+			this.status.accept("Couldn’t write to file '" + file + "'");
+			ErrorPrinter.printError("AutoSaver.finished > Couldn’t write to file '" + file + "': " + error.getMessage());
+		} else {
+			long ms = (System.nanoTime() - this.writingStart) / 1000000;
+			this.status.accept("Saved data to '" + file + "'");
+			ErrorPrinter.printInfo("AutoSaver.finished > Saved data to '" + file + "' in " + ms + " ms");
+			if (file.equals(this.target)) {
+				this.snapshotWritten(file);
+			}
+		}
+		Iterator<File> it = this.pending.iterator();
+		if (it.hasNext()) {
+			File next = it.next();
+			it.remove();
+			this.start(next);
+		}
+	}
+
+	/**
+	 * Update the journal after a save of the target
+	 *
+	 * @param file the target
+	 */
+	private void snapshotWritten(File file) {
+		if (this.journal != null && this.journal.isHealthy()) {
+			this.journal.snapshotWritten();
+			return;
+		}
+		// no journal yet or records are missing: start over with the written snapshot
+		if (this.journal != null) {
+			this.journal.close();
+			this.journal = null;
+		}
+		try {
+			this.journal = Journal.create(file);
+		} catch (IOException e) {
+			ErrorPrinter.printWarning("AutoSaver.snapshotWritten > Couldn’t create a journal for '" + file + "': " + e.getMessage());
+			return;
+		}
+		// changes made while the snapshot was written aren’t in the new journal
+		if (this.dirty) {
+			this.pending.add(file);
+		}
+	}
+
+	/**
+	 * Write all pending changes, blocks until they are written.
+	 */
+	public void flush() {
+		this.debounce.stop();
+		if (this.dirty && this.target != null) {
+			this.save(this.target);
+		}
+		while (this.writing != null) {
+			CompletableFuture<IOException> future = this.writing;
+			IOException result;
+			try {
+				result = future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				result = new IOException(e);
+			}
+			this.finished(future, result);
+		}
+	}
+
+	/**
+	 * Write all pending changes and close the journal.
+	 */
+	public void close() {
+		this.flush();
+		if (this.journal != null) {
+			this.journal.close();
+			this.journal = null;
+		}
+		this.executor.shutdown();
+	}
+}
@@ -0,0 +1,137 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Helper functions to read and write the primitives of the binary formats.
+ * <p>
+ * Counts and lengths are unsigned varints (7 bits per byte, least significant group first),
+ * strings are stored as their UTF-8 length followed by the UTF-8 bytes and uuids as two longs.
+ */
+final class BinaryCodec {
+	private BinaryCodec() {
+	}
+
+	/**
+	 * Write a unsigned varint
+	 *
+	 * @param out   the output
+	 * @param value the value, must not be negative
+	 * @throws IOException
+	 */
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Read a unsigned varint
+	 *
+	 * @param in the buffer to read from
+	 * @return the value
+	 * @throws InvalidDataException if the value is malformed
+	 */
+	static int readVarInt(ByteBuffer in) throws InvalidDataException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new InvalidDataException("Invalid varint: negative value");
+				}
+				return value;
+			}
+		}
+		throw new InvalidDataException("Invalid varint: too long");
+	}
+
+	/**
+	 * Write a string
+	 *
+	 * @param out   the output
+	 * @param value the string, null is written as empty string
+	 * @throws IOException
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null || value.isEmpty()) {
+			out.writeByte(0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string
+	 *
+	 * @param in the buffer to read from
+	 * @return the string
+	 * @throws InvalidDataException if the length exceeds the remaining data
+	 */
+	static String readString(ByteBuffer in) throws InvalidDataException {
+		int length = readVarInt(in);
+		if (length == 0) {
+			return "";
+		}
+		if (length > in.remaining()) {
+			throw new InvalidDataException("Invalid string: length exceeds data");
+		}
+		String value;
+		if (in.hasArray()) {
+			value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+			in.position(in.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+
+	/**
+	 * Write a uuid as two longs
+	 *
+	 * @param out  the output
+	 * @param uuid the uuid
+	 * @throws IOException
+	 */
+	static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * Read a uuid
+	 *
+	 * @param in the buffer to read from
+	 * @return the uuid
+	 */
+	static UUID readUuid(ByteBuffer in) {
+		long msb = in.getLong();
+		long lsb = in.getLong();
+		return new UUID(msb, lsb);
+	}
+
+	/**
+	 * Check that the buffer has enough data left
+	 *
+	 * @param in     the buffer
+	 * @param length the number of bytes that will be read
+	 * @throws BufferUnderflowException if there are less bytes remaining
+	 */
+	static void require(ByteBuffer in, int length) {
+		if (in.remaining() < length) {
+			throw new BufferUnderflowException();
+		}
+	}
+}
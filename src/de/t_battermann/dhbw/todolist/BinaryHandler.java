@@ -0,0 +1,387 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Export the user data in a compact binary snapshot
+ * <p>
+ * File format (see {@link BinaryCodec} for the primitives):
+ * MAGIC,version
+ * number of users, USER*
+ * USER: uuid,username,password,email,length of the body,TodoList count,TODOLIST*
+ * TODOLIST: uuid,name,flags (changeable),item count,TODO*
+ * TODO: uuid,title,comment,flags (done, prio, has due date),[dueDate as epoch millis]
+ * <p>
+ * The length of the body allows to skip a user without decoding its TodoLists.
+ * <p>
+ * Files are memory mapped when they are imported. Only the users credentials are read, the TodoLists of a user are
+ * decoded from the mapping when they are accessed for the first time (usually after the user logged in), or in advance
+ * by a background thread, see {@link User.TodoListLoader#prefetch()}.
+ * Users that haven’t been loaded are copied unchanged when the data is exported again.
+ * <p>
+ * A instance keeps the encoded users of its last export, use one instance per file and thread.
+ */
+public class BinaryHandler implements ExportHandler {
+	private static final int MAGIC = 0x54444c42; // "TDLB"
+	private static final byte VERSION = 1;
+
+	private static final int LIST_CHANGEABLE = 0x01;
+	private static final int TODO_DONE = 0x01;
+	private static final int TODO_PRIO = 0x02;
+	private static final int TODO_DUE_DATE = 0x04;
+
+	private final FragmentCache<byte[]> cache = new FragmentCache<>();
+
+	/**
+	 * Loads the TodoLists of a user from its stored body, usually a slice of a mapped file
+	 */
+	private class UserBody implements User.TodoListLoader {
+		private final ByteBuffer body;
+		// decoded in advance, handed out once; kept softly in case nobody asks for it
+		private SoftReference<List<TodoList>> prefetched = null;
+		private boolean loaded = false;
+
+		/**
+		 * Instantiates a new user body.
+		 *
+		 * @param body buffer containing exactly the body of a user
+		 */
+		UserBody(ByteBuffer body) {
+			this.body = body;
+		}
+
+		@Override
+		public synchronized List<TodoList> load() throws InvalidDataException {
+			List<TodoList> lists = this.prefetched != null ? this.prefetched.get() : null;
+			this.prefetched = null;
+			this.loaded = true;
+			return lists != null ? lists : this.decode();
+		}
+
+		@Override
+		public synchronized int prefetch() throws InvalidDataException {
+			if (this.loaded || this.prefetched != null && this.prefetched.get() != null) {
+				return 0;
+			}
+			List<TodoList> lists = this.decode();
+			this.prefetched = new SoftReference<>(lists);
+			int records = lists.size();
+			for (TodoList list : lists) {
+				records += list.getTodos().size();
+			}
+			return records;
+		}
+
+		@Override
+		public User.TodoListLoader copy() {
+			return new UserBody(this.body);
+		}
+
+		/**
+		 * Decode the TodoLists, can be called by any thread
+		 *
+		 * @return the TodoLists
+		 * @throws InvalidDataException
+		 */
+		private List<TodoList> decode() throws InvalidDataException {
+			ByteBuffer in = this.body.duplicate();
+			try {
+				List<TodoList> lists = readBody(in);
+				if (in.hasRemaining()) {
+					throw new InvalidDataException("Invalid user: body length doesn’t match");
+				}
+				return lists;
+			} catch (BufferUnderflowException e) {
+				throw new InvalidDataException("Unexpected end of data");
+			}
+		}
+
+		/**
+		 * Copy the unchanged body to a stream
+		 *
+		 * @param out the output
+		 * @throws IOException
+		 */
+		void writeTo(DataOutputStream out) throws IOException {
+			ByteBuffer in = this.body.duplicate();
+			BinaryCodec.writeVarInt(out, in.remaining());
+			byte[] chunk = new byte[Math.min(in.remaining(), 1 << 13)];
+			while (in.hasRemaining()) {
+				int length = Math.min(in.remaining(), chunk.length);
+				in.get(chunk, 0, length);
+				out.write(chunk, 0, length);
+			}
+		}
+	}
+
+	/**
+	 * Encode a TodoList
+	 *
+	 * @param list   The TodoList
+	 * @param buffer Buffer used for the encoding
+	 * @return The encoded TodoList
+	 * @throws IOException
+	 */
+	private byte[] encodeTodoList(TodoList list, ByteArrayOutputStream buffer) throws IOException {
+		buffer.reset();
+		DataOutputStream out = new DataOutputStream(buffer);
+		BinaryCodec.writeUuid(out, list.getUuid());
+		BinaryCodec.writeString(out, list.getName());
+		out.writeByte(list.isChangeable() ? LIST_CHANGEABLE : 0);
+		BinaryCodec.writeVarInt(out, list.getTodos().size());
+		for (Todo todo : list.getTodos()) {
+			BinaryCodec.writeUuid(out, todo.getUuid());
+			BinaryCodec.writeString(out, todo.getTitle());
+			BinaryCodec.writeString(out, todo.getComment());
+			int flags = (todo.isDone() ? TODO_DONE : 0) | (todo.isPrio() ? TODO_PRIO : 0);
+			if (todo.hasDueDate()) {
+				out.writeByte(flags | TODO_DUE_DATE);
+				out.writeLong(todo.getDueDateMillis());
+			} else {
+				out.writeByte(flags);
+			}
+		}
+		out.flush();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Encode the TodoLists of a user, unchanged TodoLists are taken from the cache
+	 *
+	 * @param user       The user
+	 * @param buffer     Buffer used for the body
+	 * @param listBuffer Buffer used for the TodoLists
+	 * @return The encoded body
+	 * @throws IOException
+	 */
+	private byte[] encodeBody(User user, ByteArrayOutputStream buffer, ByteArrayOutputStream listBuffer) throws IOException {
+		List<TodoList> lists = user.getTodoLists();
+		long revision = user.getRevision();
+		buffer.reset();
+		DataOutputStream out = new DataOutputStream(buffer);
+		BinaryCodec.writeVarInt(out, lists.size());
+		List<UUID> children = new ArrayList<>(lists.size());
+		for (TodoList list : lists) {
+			long listRevision = list.getRevision();
+			byte[] data = this.cache.get(list.getUuid(), listRevision);
+			if (data == null) {
+				data = this.encodeTodoList(list, listBuffer);
+				this.cache.put(list.getUuid(), listRevision, data);
+			}
+			out.write(data);
+			children.add(list.getUuid());
+		}
+		out.flush();
+		byte[] body = buffer.toByteArray();
+		this.cache.put(user.getUuid(), revision, body, children);
+		return body;
+	}
+
+	/**
+	 * Write the users to a stream
+	 * <p>
+	 * Users and TodoLists that didn’t change since the previous export of this handler are copied from the cache.
+	 *
+	 * @param users  The users map
+	 * @param stream The stream the data is written to
+	 * @throws IOException
+	 */
+	private void doExport(Map<String, User> users, OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ByteArrayOutputStream listBuffer = new ByteArrayOutputStream();
+		this.cache.begin();
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		BinaryCodec.writeVarInt(out, users.size());
+		for (User user : users.values()) {
+			BinaryCodec.writeUuid(out, user.getUuid());
+			BinaryCodec.writeString(out, user.getUsername());
+			BinaryCodec.writeString(out, user.getPassword());
+			BinaryCodec.writeString(out, user.getEmail());
+			User.TodoListLoader loader = user.getTodoListLoader();
+			if (loader instanceof UserBody) {
+				((UserBody) loader).writeTo(out);
+				continue;
+			}
+			byte[] body = this.cache.get(user.getUuid(), user.getRevision());
+			if (body == null) {
+				body = this.encodeBody(user, buffer, listBuffer);
+			}
+			BinaryCodec.writeVarInt(out, body.length);
+			out.write(body);
+		}
+		out.flush();
+		this.cache.commit();
+		ErrorPrinter.printDebug(() -> "doExport > Copied " + this.cache.getHits() + " and encoded " + this.cache.getMisses() + " users/TodoLists");
+	}
+
+	/**
+	 * Export to file.
+	 * <p>
+	 * The data is written to a temporary file which then replaces the target, a file that is still mapped
+	 * (because it contains users that haven’t been loaded) is never overwritten in place.
+	 *
+	 * @param users The users map
+	 * @param file  The file the data should be saved to
+	 * @throws IOException
+	 */
+	@Override
+	public void exportToFile(Map<String, User> users, File file) throws IOException {
+		ExportHandler.writeFile(file, stream -> this.doExport(users, stream));
+	}
+
+	@Override
+	public String exportToString(Map<String, User> users) {
+		try {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			this.doExport(users, stream);
+			return Base64.getEncoder().encodeToString(stream.toByteArray());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "";
+		}
+	}
+
+	/**
+	 * Read the TodoLists of a user, equal texts share one String
+	 *
+	 * @param in The buffer positioned at the start of the body
+	 * @return The TodoLists
+	 * @throws InvalidDataException
+	 */
+	private List<TodoList> readBody(ByteBuffer in) throws InvalidDataException {
+		int lists = BinaryCodec.readVarInt(in);
+		List<TodoList> todoLists = new ArrayList<>(lists);
+		Set<String> names = new HashSet<>();
+		StringPool pool = new StringPool();
+		for (int i = 0; i < lists; i++) {
+			UUID uuid = BinaryCodec.readUuid(in);
+			String name = pool.get(BinaryCodec.readString(in));
+			TodoList list = new TodoList(uuid, name, (in.get() & LIST_CHANGEABLE) != 0);
+			int todos = BinaryCodec.readVarInt(in);
+			for (int j = 0; j < todos; j++) {
+				UUID todoUuid = BinaryCodec.readUuid(in);
+				String title = pool.get(BinaryCodec.readString(in));
+				String comment = pool.get(BinaryCodec.readString(in));
+				int flags = in.get();
+				long dueDate = (flags & TODO_DUE_DATE) != 0 ? in.getLong() : Todo.NO_DUE_DATE;
+				list.addTodo(new Todo(todoUuid, title, comment, dueDate, (flags & TODO_DONE) != 0, (flags & TODO_PRIO) != 0));
+			}
+			if (!names.add(name)) {
+				throw new InvalidDataException("Invalid TodoList: duplicate TodoList!");
+			}
+			todoLists.add(list);
+		}
+		return todoLists;
+	}
+
+	/**
+	 * Helper function to convert the binary data to a map containing the user data
+	 *
+	 * @param in       Buffer containing the data
+	 * @param lazy     Only read the credentials, the TodoLists are read from the buffer when they are accessed
+	 * @param progress Receives the position in the buffer and the number of users
+	 * @return The users, username as index
+	 * @throws InvalidDataException
+	 */
+	private Map<String, User> doImport(ByteBuffer in, boolean lazy, Progress progress) throws InvalidDataException {
+		Map<String, User> users = new TreeMap<>();
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new InvalidDataException("Not a TodoList snapshot");
+			}
+			byte version = in.get();
+			if (version != VERSION) {
+				throw new InvalidDataException("Unsupported snapshot version " + version);
+			}
+			int count = BinaryCodec.readVarInt(in);
+			for (int i = 0; i < count; i++) {
+				UUID uuid = BinaryCodec.readUuid(in);
+				String username = BinaryCodec.readString(in);
+				String password = BinaryCodec.readString(in);
+				String email = BinaryCodec.readString(in);
+				int length = BinaryCodec.readVarInt(in);
+				BinaryCodec.require(in, length);
+				ByteBuffer body = in.slice();
+				body.limit(length);
+				in.position(in.position() + length);
+				User user;
+				if (lazy) {
+					user = new User(uuid, username, password, email, new UserBody(body.asReadOnlyBuffer()));
+				} else {
+					user = new User(uuid, username, password, email);
+					user.getTodoLists().addAll(new UserBody(body).load());
+				}
+				if (users.put(username, user) != null) {
+					throw new InvalidDataException("Invalid user: duplicate User!");
+				}
+				if (users.size() % 1024 == 0) {
+					progress.update(in.position(), users.size());
+				}
+			}
+			progress.update(in.position(), users.size());
+		} catch (BufferUnderflowException e) {
+			throw new InvalidDataException("Unexpected end of data");
+		}
+		return users;
+	}
+
+	/**
+	 * Import from file.
+	 * <p>
+	 * The file is mapped and only the credentials of the users are read, see {@link User#getTodoLists()}.
+	 *
+	 * @param file Path to the saved data
+	 * @return A Map containing the Users, username as index
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	@Override
+	public Map<String, User> importFromFile(File file) throws IOException, InvalidDataException {
+		return this.importFromFile(file, (bytes, records) -> {
+		});
+	}
+
+	/**
+	 * Import from file and report the progress.
+	 * <p>
+	 * Only the credentials are read, the progress jumps over the TodoLists of the users.
+	 *
+	 * @param file     Path to the saved data
+	 * @param progress receives the progress
+	 * @return A Map containing the Users, username as index
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	@Override
+	public Map<String, User> importFromFile(File file, Progress progress) throws IOException, InvalidDataException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File too large to be mapped: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		Map<String, User> users = this.doImport(buffer, true, progress);
+		ErrorPrinter.printInfo("importFromFile > Mapped " + users.size() + " users from '" + file + "'");
+		return users;
+	}
+
+	@Override
+	public Map<String, User> importFromString(String str) throws InvalidDataException {
+		try {
+			return this.doImport(ByteBuffer.wrap(Base64.getDecoder().decode(str)), false, (bytes, records) -> {
+			});
+		} catch (IllegalArgumentException e) {
+			throw new InvalidDataException("Invalid Base64 data");
+		}
+	}
+}
@@ -1,16 +1,13 @@
 package de.t_battermann.dhbw.todolist;
 
 import com.opencsv.CSVParser;
-import com.opencsv.CSVWriter;
 
 import java.io.*;
-import java.nio.charset.Charset;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.Map;
-import java.util.TreeMap;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
 
 /**
  * Export the user data in a CSV file
@@ -19,84 +16,246 @@ import java.util.TreeMap;
  * USER,uuid,username,password,email
  * TODOLIST,username,uuid,name,changeable
  * TO DO,username,todolist,uuid,title,comment,dueDate,done,prio
+ * <p>
+ * The file is UTF-8 encoded. A instance keeps the encoded users of its last export, use one instance per file and
+ * thread.
  */
 public class CSVHandler implements ExportHandler {
+	private final FragmentCache<byte[]> cache = new FragmentCache<>();
+	// reused for every line, the first field is the line identifier
+	private final String[] userRow = {"USER", null, null, null, null};
+	private final String[] listRow = {"TODOLIST", null, null, null, null};
+	private final String[] todoRow = {"TODO", null, null, null, null, null, null, null, null};
+
 	/**
-	 * Convert a map containing the users to a DOMSource containing XML
+	 * Append a CSV line to a buffer, quoted like CSVWriter does
 	 *
-	 * @param users The users map
-	 * @return String containing CSV
+	 * @param row    The fields of the line
+	 * @param buffer The buffer, reused for all lines
 	 */
-	private String doExport(Map<String, User> users) {
-		StringWriter sw = new StringWriter();
-		CSVWriter w = new CSVWriter(sw);
-		StringWriter s = new StringWriter();
-		// date formatter
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
-		for (User user : users.values()) {
-			String userData[] = {"USER", user.getUuid(), user.getUsername(), user.getPassword(), user.getEmail()};
-			w.writeNext(userData);
-			for (TodoList list : user.getTodoLists()) {
-				String listData[] = {"TODOLIST", user.getUsername(), list.getUuid(), list.getName(), list.isChangeable() ? "true" : "false"};
-				w.writeNext(listData);
-				for (Todo todo : list.getTodos()) {
-					String todoData[] = {"TODO", user.getUsername(), list.getName(), todo.getUuid(), todo.getTitle(), todo.getComment(),
-							todo.getDueDate() == null ? "0" : format.format(todo.getDueDate().getTime()), todo.isDone() ? "true" : "false", todo.isPrio() ? "true" : "false"};
-					w.writeNext(todoData);
+	private static void appendRow(String[] row, StringBuilder buffer) {
+		for (int i = 0; i < row.length; i++) {
+			if (i != 0) {
+				buffer.append(',');
+			}
+			String field = row[i];
+			if (field == null) {
+				continue;
+			}
+			buffer.append('"');
+			for (int j = 0; j < field.length(); j++) {
+				char c = field.charAt(j);
+				if (c == '"') {
+					buffer.append('"');
 				}
+				buffer.append(c);
+			}
+			buffer.append('"');
+		}
+		buffer.append('\n');
+	}
+
+	/**
+	 * Convert a TodoList to CSV
+	 *
+	 * @param user    The owner of the list
+	 * @param list    The list
+	 * @param rows    Buffer used for the lines
+	 * @param encoder Encodes the lines to UTF-8
+	 * @return The UTF-8 encoded CSV lines of the list and its items
+	 * @throws IOException
+	 */
+	private byte[] encodeTodoList(User user, TodoList list, StringBuilder rows, RowEncoder encoder) throws IOException {
+		rows.setLength(0);
+		String[] listData = this.listRow;
+		listData[1] = user.getUsername();
+		listData[2] = list.getUuid().toString();
+		listData[3] = list.getName();
+		listData[4] = list.isChangeable() ? "true" : "false";
+		appendRow(listData, rows);
+		String[] todoData = this.todoRow;
+		todoData[1] = user.getUsername();
+		todoData[2] = list.getName();
+		for (Todo todo : list.getTodos()) {
+			todoData[3] = todo.getUuid().toString();
+			todoData[4] = todo.getTitle();
+			todoData[5] = todo.getComment();
+			todoData[6] = !todo.hasDueDate() ? "0" : DateCodec.format(todo.getDueDateMillis());
+			todoData[7] = todo.isDone() ? "true" : "false";
+			todoData[8] = todo.isPrio() ? "true" : "false";
+			appendRow(todoData, rows);
+		}
+		return encoder.encode(rows);
+	}
+
+	/**
+	 * Convert a user to CSV, unchanged TodoLists are taken from the cache
+	 *
+	 * @param user    The user
+	 * @param rows    Buffer used for the lines
+	 * @param encoder Encodes the lines to UTF-8
+	 * @param buffer  Buffer used for the user
+	 * @return The UTF-8 encoded CSV lines of the user and its lists
+	 * @throws IOException
+	 */
+	private byte[] encodeUser(User user, StringBuilder rows, RowEncoder encoder, ByteArrayOutputStream buffer) throws IOException {
+		List<TodoList> lists = user.getTodoLists();
+		long revision = user.getRevision();
+		buffer.reset();
+		rows.setLength(0);
+		String[] userData = this.userRow;
+		userData[1] = user.getUuid().toString();
+		userData[2] = user.getUsername();
+		userData[3] = user.getPassword();
+		userData[4] = user.getEmail();
+		appendRow(userData, rows);
+		buffer.write(encoder.encode(rows));
+		List<UUID> children = new ArrayList<>(lists.size());
+		for (TodoList list : lists) {
+			long listRevision = list.getRevision();
+			byte[] data = this.cache.get(list.getUuid(), listRevision);
+			if (data == null) {
+				data = this.encodeTodoList(user, list, rows, encoder);
+				this.cache.put(list.getUuid(), listRevision, data);
+			}
+			buffer.write(data);
+			children.add(list.getUuid());
+		}
+		byte[] data = buffer.toByteArray();
+		this.cache.put(user.getUuid(), revision, data, children);
+		return data;
+	}
+
+	/**
+	 * Write the users as CSV to a stream
+	 * <p>
+	 * Users and TodoLists that didn’t change since the previous export of this handler are copied from the cache, the
+	 * other ones are encoded user by user, so only one user is held in memory besides the cache.
+	 *
+	 * @param users  The users map
+	 * @param stream The stream the UTF-8 encoded CSV is written to
+	 * @throws IOException
+	 */
+	private void doExport(Map<String, User> users, OutputStream stream) throws IOException {
+		StringBuilder rows = new StringBuilder(1 << 12);
+		RowEncoder encoder = new RowEncoder();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 12);
+		this.cache.begin();
+		for (User user : users.values()) {
+			byte[] data = this.cache.get(user.getUuid(), user.getRevision());
+			if (data == null) {
+				data = this.encodeUser(user, rows, encoder, buffer);
 			}
+			stream.write(data);
 		}
-		return sw.toString();
+		this.cache.commit();
+		ErrorPrinter.printDebug(() -> "doExport > Copied " + this.cache.getHits() + " and encoded " + this.cache.getMisses() + " users/TodoLists");
 	}
 
 	@Override
 	public void exportToFile(Map<String, User> users, File file) throws IOException {
-		FileWriter fw = new FileWriter(file);
-		BufferedWriter bw = new BufferedWriter(fw);
-		bw.write(doExport(users));
-		bw.close();
+		long start = System.nanoTime();
+		// replaces the file only after the data was written completely
+		ExportHandler.writeFile(file, stream -> this.doExport(users, stream));
+		long ns = Math.max(System.nanoTime() - start, 1);
+		double mb = file.length() / 1e6;
+		ErrorPrinter.printDebug(() -> String.format("exportToFile > Wrote %.1f MB in %d ms (%.1f MB/s)", mb, ns / 1000000, mb * 1e9 / ns));
 	}
 
 	@Override
 	public String exportToString(Map<String, User> users) {
-		return doExport(users);
+		try {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			this.doExport(users, stream);
+			return stream.toString("UTF-8");
+		} catch (IOException e) {
+			e.printStackTrace();
+			return "";
+		}
+	}
+
+	/**
+	 * UTF-8 encoder reusing its buffers for all lines
+	 */
+	private static class RowEncoder {
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private CharBuffer chars = CharBuffer.allocate(1 << 12);
+		private ByteBuffer bytes = ByteBuffer.allocate(1 << 14);
+
+		/**
+		 * Encode the content of a buffer
+		 *
+		 * @param rows the lines
+		 * @return the UTF-8 encoded lines
+		 * @throws CharacterCodingException
+		 */
+		byte[] encode(StringBuilder rows) throws CharacterCodingException {
+			if (this.chars.capacity() < rows.length()) {
+				this.chars = CharBuffer.allocate(Math.max(rows.length(), this.chars.capacity() * 2));
+			}
+			this.chars.clear();
+			rows.getChars(0, rows.length(), this.chars.array(), 0);
+			this.chars.limit(rows.length());
+			int max = (int) Math.ceil(rows.length() * (double) this.encoder.maxBytesPerChar());
+			if (this.bytes.capacity() < max) {
+				this.bytes = ByteBuffer.allocate(Math.max(max, this.bytes.capacity() * 2));
+			}
+			this.bytes.clear();
+			this.encoder.reset();
+			CoderResult result = this.encoder.encode(this.chars, this.bytes, true);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			this.encoder.flush(this.bytes);
+			return Arrays.copyOf(this.bytes.array(), this.bytes.position());
+		}
 	}
 
 	/**
 	 * Get a date from a element
 	 *
 	 * @param date The String containing the date
-	 * @return Either the date (if found) or null
+	 * @return Either the date (if found) or Todo.NO_DUE_DATE
 	 */
-	private Calendar stringToDate(String date) {
+	private long stringToDate(String date) {
 		if (date.equals("0"))
-			return null;
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
+			return Todo.NO_DUE_DATE;
 		try {
-			Calendar r = new GregorianCalendar();
-			r.setTime(format.parse(date));
-			return r;
-		} catch (ParseException e) {
+			return DateCodec.parse(date);
+		} catch (DateTimeParseException e) {
 			e.printStackTrace();
 		}
-		return null;
+		return Todo.NO_DUE_DATE;
 	}
 
 	/**
-	 * Helper function to convert the xml to a map containing the user data
+	 * Helper function to convert the csv to a map containing the user data, equal texts share one String
 	 *
-	 * @param stream InputStream containing XML data
+	 * @param stream InputStream containing CSV data
 	 * @return The user object
 	 * @throws IOException
 	 * @throws InvalidDataException
 	 */
 	private Map<String, User> doImport(InputStream stream) throws IOException, InvalidDataException {
-		BufferedReader r = new BufferedReader(new InputStreamReader(stream));
+		return this.doImport(new ImportCounter(stream, null));
+	}
+
+	/**
+	 * Helper function to convert the csv to a map containing the user data, equal texts share one String
+	 *
+	 * @param stream InputStream containing CSV data, every line is counted as record
+	 * @return The user object
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	private Map<String, User> doImport(ImportCounter stream) throws IOException, InvalidDataException {
+		BufferedReader r = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
 		CSVParser c = new CSVParser();
 		String csv, line[];
 		Map<String, User> users = new TreeMap<>();
+		StringPool pool = new StringPool();
 		while ((csv = r.readLine()) != null) {
 			line = c.parseLine(csv);
 			switch (line[0]) {
@@ -106,7 +265,7 @@ public class CSVHandler implements ExportHandler {
 					} else if (users.containsKey(line[2])) {
 						throw new InvalidDataException("Invalid user: duplicate User!");
 					} else {
-						User u = new User(line[1], line[2], line[3], line[4]);
+						User u = new User(Tracked.parseUserUuid(line[1]), pool.get(line[2]), line[3], line[4]);
 						users.put(line[2], u);
 					}
 					break;
@@ -115,10 +274,10 @@ public class CSVHandler implements ExportHandler {
 						throw new InvalidDataException("Invalid TodoList: line doesn’t contain 5 elements");
 					} else if (!users.containsKey(line[1])) {
 						throw new InvalidDataException("Invalid TodoList: User not found!");
-					} else if (users.get(line[1]).getTodoList(line[3]) != null) {
+					} else if (users.get(line[1]).hasTodoList(line[3])) {
 						throw new InvalidDataException("Invalid TodoList: duplicate TodoList!");
 					} else {
-						TodoList t = new TodoList(line[2], line[3], line[4].equals("true"));
+						TodoList t = new TodoList(Tracked.parseUuid(line[2]), pool.get(line[3]), line[4].equals("true"));
 						users.get(line[1]).addTodoList(t);
 					}
 					break;
@@ -127,17 +286,20 @@ public class CSVHandler implements ExportHandler {
 						throw new InvalidDataException("Invalid Todo: line doesn’t contain 9 elements" + line.length);
 					} else if (!users.containsKey(line[1])) {
 						throw new InvalidDataException("Invalid Todo: User not found!");
-					} else if (users.get(line[1]).getTodoList(line[2]) == null) {
+					} else if (!users.get(line[1]).hasTodoList(line[2])) {
 						throw new InvalidDataException("Invalid Todo: TodoList not found!");
 					} else {
-						Todo t = new Todo(line[3], line[4], line[5], stringToDate(line[6]), line[7].equals("true"), line[8].equals("true"));
+						Todo t = new Todo(Tracked.parseUuid(line[3]), pool.get(line[4]), pool.get(line[5]), stringToDate(line[6]), line[7].equals("true"), line[8].equals("true"));
 						users.get(line[1]).getTodoList(line[2]).addTodo(t);
 					}
 					break;
 				default:
 					throw new InvalidDataException("Unexpected line identifier.");
 			}
+			stream.record();
 		}
+		stream.report();
+		ErrorPrinter.printInfo("doImport > " + pool);
 		return users;
 	}
 
@@ -147,10 +309,17 @@ public class CSVHandler implements ExportHandler {
 		return this.doImport(inputStream);
 	}
 
+	@Override
+	public Map<String, User> importFromFile(File file, Progress progress) throws IOException, InvalidDataException {
+		try (InputStream inputStream = new FileInputStream(file)) {
+			return this.doImport(new ImportCounter(inputStream, progress));
+		}
+	}
+
 	@Override
 	public Map<String, User> importFromString(String str) throws InvalidDataException {
 		try {
-			InputStream inputStream = new ByteArrayInputStream(str.getBytes(Charset.forName("UTF-8")));
+			InputStream inputStream = new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8));
 			return this.doImport(inputStream);
 		} catch (IOException e) {
 			e.printStackTrace();
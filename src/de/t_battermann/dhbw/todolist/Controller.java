@@ -1,32 +1,45 @@
 package de.t_battermann.dhbw.todolist;
 
-import com.sun.javafx.collections.ObservableListWrapper;
-import com.sun.javafx.collections.ObservableSequentialListWrapper;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.stage.Stage;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.List;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 
 public class Controller {
+	// the agenda shows at most this many items found by the search
+	private static final int MAX_SEARCH_RESULTS = 500;
 	private Map<String, User> users = null;
 	private User currentUser = null;
 	private ObservableList<TodoList> todoLists = null;
 	private ObservableList<Todo> todos;
+	private TodoView todoView = null;
+	private TodoList currentTodoList = null;
 	private Todo currentTodo = null;
 	private String filename = null;
+	private AutoSaver autoSaver = null;
+	private DatabaseLoader loader = null;
+	private UuidIndex uuidIndex = null;
+	private OverdueWatcher overdueWatcher = null;
+	private DueDateIndex dueDateIndex = null;
+	private SearchIndex searchIndex = null;
+	private TrackedItems<Todo> agendaItems = null;
+	private boolean agendaPending = false;
+	private MainWindow mainWindow = null;
 	private Stage primaryStage;
 	private String buttonAction = "new";
 
@@ -41,21 +54,135 @@ public class Controller {
 	public void initEmpty() {
 		ErrorPrinter.printInfo("initEmpty > Initialized empty database");
 		this.users = new TreeMap<>();
+		this.uuidIndex = new UuidIndex(this.users);
+		this.autoSaver = new AutoSaver(this.users, this::updateStatusLine);
 	}
 
-	public void initFromFile(String filename) throws IOException, InvalidDataException {
+	/**
+	 * Get the format of a file, chosen by its extension
+	 *
+	 * @param filename the filename
+	 * @return "csv", "bin" or "xml"
+	 */
+	static String formatOf(String filename) {
+		if (filename.endsWith(".csv")) {
+			return "csv";
+		} else if (filename.endsWith(".bin")) {
+			return "bin";
+		}
+		return "xml";
+	}
+
+	/**
+	 * Create a handler for a format
+	 *
+	 * @param format the format, see {@link #formatOf(String)}
+	 * @return the handler
+	 */
+	static ExportHandler newHandler(String format) {
+		switch (format) {
+			case "csv":
+				return new CSVHandler();
+			case "bin":
+				return new BinaryHandler();
+			default:
+				return new XMLHandler();
+		}
+	}
+
+	/**
+	 * Start loading a file in the background, the login is shown as soon as the credentials are read
+	 *
+	 * @param filename the filename
+	 * @return the loader or null if the file can’t be read
+	 */
+	private DatabaseLoader loadFile(String filename) {
 		File f = new File(filename);
 		if (!f.isFile() || f.isDirectory() || !f.canRead()) {
-			throw new IOException();
+			return null;
+		}
+		DatabaseLoader loader = new DatabaseLoader(f, newHandler(formatOf(filename)));
+		loader.valueProperty().addListener((observable, oldValue, users) -> {
+			// set once, unless the import was cancelled meanwhile
+			if (users != null && loader == this.loader && !loader.isCancelled()) {
+				this.users = users;
+				this.uuidIndex = loader.getUuidIndex();
+				this.opened(filename, loader.getReplayed());
+				this.showLoginDialog();
+			}
+		});
+		loader.setOnSucceeded(event -> {
+			if (this.loader == loader) {
+				this.loader = null;
+			}
+		});
+		this.loader = loader;
+		Thread thread = new Thread(loader, "load");
+		thread.setDaemon(true);
+		thread.start();
+		return loader;
+	}
+
+	/**
+	 * Stop loading, the TodoLists that weren’t decoded yet are decoded when they are accessed
+	 */
+	private void stopLoading() {
+		if (this.loader != null) {
+			this.loader.cancel();
+			this.loader = null;
 		}
-		ExportHandler e;
-		if (filename.endsWith(".csv")) {
-			e = new CSVHandler();
-		} else {
-			e = new XMLHandler();
+	}
+
+	/**
+	 * Save the users to the file they were loaded from from now on
+	 *
+	 * @param filename the filename
+	 * @param records  the number of changes replayed from its journal
+	 */
+	private void opened(String filename, int records) {
+		if (records > 0) {
+			ErrorPrinter.printInfo("opened > Replayed " + records + " changes from the journal");
 		}
-		this.users = e.importFromFile(new File(filename));
 		this.filename = filename;
+		this.autoSaver = new AutoSaver(this.users, this::updateStatusLine);
+		try {
+			this.autoSaver.open(new File(filename));
+		} catch (IOException e) {
+			ErrorPrinter.printWarning("opened > Couldn’t open the journal, the changes are saved with the next snapshot: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the pending changes and stop saving automatically
+	 */
+	private void closeAutoSaver() {
+		if (this.autoSaver != null) {
+			this.autoSaver.close();
+			this.autoSaver = null;
+		}
+	}
+
+	/**
+	 * Stop following the changes of the current user: overdue items, due dates, the search and the agenda
+	 */
+	private void stopWatchingUser() {
+		if (this.overdueWatcher != null) {
+			this.overdueWatcher.stop();
+			this.overdueWatcher = null;
+		}
+		if (this.dueDateIndex != null) {
+			this.dueDateIndex.close();
+			this.dueDateIndex = null;
+		}
+		if (this.searchIndex != null) {
+			this.searchIndex.close();
+			this.searchIndex = null;
+		}
+		if (this.agendaItems != null) {
+			// detaches the listeners from the items
+			this.agendaItems.clear();
+			this.agendaItems = null;
+		}
 	}
 
 	public boolean export(String filename) {
@@ -66,22 +193,11 @@ public class Controller {
 				ErrorPrinter.printError("export > Couldn’t write to file '" + filename + "'");
 				return false;
 			}
-			ExportHandler e;
-			if (filename.endsWith(".csv")) {
-				e = new CSVHandler();
-			} else {
-				e = new XMLHandler();
+			// the first file the data is saved to is saved automatically from now on
+			if (this.autoSaver.getTarget() == null && filename.equals(this.filename)) {
+				this.autoSaver.setTarget(f);
 			}
-			try {
-				e.exportToFile(this.users, f);
-			} catch (IOException e1) {
-				this.updateStatusLine("Couldn’t write to file '" + filename + "'");
-				ErrorPrinter.printError("export > Could’t write to file '" + filename + "'");
-				e1.printStackTrace();
-				return false;
-			}
-			this.updateStatusLine("Saved data to'" + filename + "'");
-			ErrorPrinter.printInfo("export > Saved data to'" + filename + "'");
+			this.autoSaver.save(f);
 			return true;
 		}
 		this.updateStatusLine("No filename given. Please choose one!");
@@ -91,15 +207,20 @@ public class Controller {
 
 	public void showLoadFileDialog() {
 		// log out (doesn't do anything if not logged in)
+		this.stopLoading();
+		this.stopWatchingUser();
+		this.closeAutoSaver();
 		this.users = null;
+		this.uuidIndex = null;
 		this.currentUser = null;
 		this.todoLists = null;
 		this.todos = null;
 		this.filename = null;
+		this.mainWindow = null;
 		// show dialog
 		primaryStage.setTitle("TodoList :: Open database");
 		try {
-			primaryStage.setScene(new Scene(FXMLLoader.load(getClass().getResource("openFile.fxml")), 500, 150));
+			primaryStage.setScene(new Scene(FXMLLoader.load(getClass().getResource("openFile.fxml")), 500, 200));
 		} catch (IOException e) {
 			ErrorPrinter.printError("showLoadFileDialog > Could’t open window 'openFile'! Goodbye!");
 			e.printStackTrace();
@@ -108,36 +229,75 @@ public class Controller {
 		}
 		primaryStage.show();
 		// register event handlers
-		Button b = (Button) primaryStage.getScene().lookup("#openFileButton");
-		b.setOnMouseReleased(event -> {
+		Button open = (Button) primaryStage.getScene().lookup("#openFileButton");
+		Button cancel = (Button) primaryStage.getScene().lookup("#openFileCancel");
+		ProgressBar progress = (ProgressBar) primaryStage.getScene().lookup("#openFileProgress");
+		Label status = (Label) primaryStage.getScene().lookup("#openFileStatus");
+		open.setOnMouseReleased(event -> {
 			Node n = primaryStage.getScene().lookup("#openFilePath");
 			if (n != null && n instanceof TextField) {
-				try {
-					this.initFromFile(((TextField) n).getText());
-					this.showLoginDialog();
-				} catch (InvalidDataException | IOException e1) {
-					ErrorPrinter.printError("showLoadFileDialog > Can’t read file '" + this.filename + "'");
-					e1.printStackTrace();
+				String filename = ((TextField) n).getText();
+				DatabaseLoader loader = this.loadFile(filename);
+				if (loader == null) {
+					ErrorPrinter.printError("showLoadFileDialog > Can’t read file '" + filename + "'");
+					status.setText("Can’t read file '" + filename + "'");
+					return;
 				}
+				open.setDisable(true);
+				cancel.setDisable(false);
+				progress.progressProperty().bind(loader.progressProperty());
+				status.textProperty().bind(loader.messageProperty());
+				// the dialog is replaced by the login as soon as the credentials are read
+				loader.setOnFailed(e -> {
+					if (this.loader == loader) {
+						this.loader = null;
+					}
+					ErrorPrinter.printError("showLoadFileDialog > Can’t read file '" + filename + "'");
+					loader.getException().printStackTrace();
+					this.loadingStopped(open, cancel, progress, status, "Can’t read file '" + filename + "': " + loader.getException().getMessage());
+				});
+				loader.setOnCancelled(e -> this.loadingStopped(open, cancel, progress, status, "Cancelled"));
 			} else {
 				ErrorPrinter.printWarning("showLoadFileDialog > Didn’t find element #openFilePath!");
 			}
 		});
-		b = (Button) primaryStage.getScene().lookup("#openFileNew");
+		cancel.setOnAction(event -> this.stopLoading());
+		Button b = (Button) primaryStage.getScene().lookup("#openFileNew");
 		b.setOnMouseReleased(event -> {
+			this.stopLoading();
 			this.initEmpty();
 			this.showLoginDialog();
 		});
 	}
 
+	/**
+	 * Reset the open file dialog after loading failed or was cancelled
+	 *
+	 * @param open     the open button
+	 * @param cancel   the cancel button
+	 * @param progress the progress bar
+	 * @param status   the status label
+	 * @param text     the status to show
+	 */
+	private void loadingStopped(Button open, Button cancel, ProgressBar progress, Label status, String text) {
+		open.setDisable(false);
+		cancel.setDisable(true);
+		progress.progressProperty().unbind();
+		progress.setProgress(0);
+		status.textProperty().unbind();
+		status.setText(text);
+	}
+
 	private void showLoginDialog() {
 		// log out ...
+		this.stopWatchingUser();
 		this.currentUser = null;
 		this.todoLists = null;
 		this.todos = null;
+		this.mainWindow = null;
 		primaryStage.setTitle("TodoList :: Log in");
 		try {
-			primaryStage.setScene(new Scene(FXMLLoader.load(getClass().getResource("login.fxml")), 500, 350));
+			primaryStage.setScene(new Scene(FXMLLoader.load(getClass().getResource("login.fxml")), 500, 380));
 		} catch (IOException e) {
 			ErrorPrinter.printError("showLoginDialog > Failed to open window 'login'! Goodbye!");
 			e.printStackTrace();
@@ -148,6 +308,12 @@ public class Controller {
 		if (a != null) {
 			a.setExpanded(true);
 		}
+		// the TodoLists may still be loading
+		if (this.loader != null) {
+			primaryStage.getScene().lookup("#loginLoading").visibleProperty().bind(this.loader.runningProperty());
+			((ProgressBar) primaryStage.getScene().lookup("#loginProgress")).progressProperty().bind(this.loader.progressProperty());
+			((Label) primaryStage.getScene().lookup("#loginLoadingStatus")).textProperty().bind(this.loader.messageProperty());
+		}
 		// Log in
 		Node n = primaryStage.getScene().lookup("#loginButton");
 		if (n != null && n instanceof Button) {
@@ -169,7 +335,9 @@ public class Controller {
 				if (this.users.containsKey(name)) {
 					this.currentUser = this.users.get(name);
 					if (this.currentUser.checkLoginData(pass)) {
-						this.todoLists = new ObservableListWrapper<>(currentUser.getTodoLists());
+						// only the TodoLists of this user are needed, they are taken from the loader if it got to them
+						this.stopLoading();
+						this.todoLists = currentUser.getObservableTodoLists();
 						this.showMainWindow();
 					} else {
 						this.currentUser = null;
@@ -229,7 +397,9 @@ public class Controller {
 				nu.setEmail(email);
 				currentUser = nu;
 				users.put(username, nu);
-				this.todoLists = new ObservableSequentialListWrapper<>(currentUser.getTodoLists());
+				this.uuidIndex.addUser(nu);
+				this.autoSaver.changed(journal -> journal.userCreated(nu));
+				this.todoLists = currentUser.getObservableTodoLists();
 				// log in
 				this.showMainWindow();
 			});
@@ -239,276 +409,234 @@ public class Controller {
 	}
 
 	private void showMainWindow() {
+		this.stopLoading();
 		primaryStage.setTitle("TodoList :: " + currentUser.getUsername() + " > Default");
 		try {
 			primaryStage.setScene(new Scene(FXMLLoader.load(getClass().getResource("main.fxml")), 950, 650));
+			this.mainWindow = new MainWindow(primaryStage.getScene());
 		} catch (IOException e) {
 			ErrorPrinter.printError("showMainWindow > Failed to open window 'main'! Goodbye!");
 			e.printStackTrace();
 			Platform.exit();
 			return;
 		}
-		Node n = primaryStage.getScene().lookup("#todoLists");
-		if (n != null && n instanceof ListView) {
-			ListView<TodoList> lv = (ListView<TodoList>) n;
-			lv.setItems(this.todoLists);
-			lv.scrollTo(currentUser.getTodoList("Default"));
-			lv.getSelectionModel().select(currentUser.getTodoList("Default"));
-			lv.getSelectionModel().selectedIndexProperty().addListener(event -> {
-				this.updateSelectedTodoList();
-			});
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoLists'");
-		}
-		this.todos = new ObservableListWrapper<>(currentUser.getTodoList("Default").getTodos());
-		n = primaryStage.getScene().lookup("#todos");
-		if (n != null && n instanceof ListView) {
-			ListView<Todo> lv = (ListView<Todo>) n;
-			lv.setItems(this.todos);
-			if (!this.todos.isEmpty()) {
-				lv.getSelectionModel().select(0);
+		MainWindow w = this.mainWindow;
+		this.overdueWatcher = new OverdueWatcher(this.currentUser);
+		this.overdueWatcher.start();
+		if (this.overdueWatcher.getOverdueCount() > 0) {
+			this.updateStatusLine(this.overdueWatcher.getOverdueCount() + " items past due");
+		}
+		// agenda
+		this.dueDateIndex = new DueDateIndex(this.currentUser);
+		this.dueDateIndex.setOnChanged(this::updateAgendaLater);
+		this.overdueWatcher.setOnExpired(this::updateAgendaLater);
+		this.searchIndex = new SearchIndex(this.currentUser);
+		this.searchIndex.setOnChanged(this::updateAgendaLater);
+		this.agendaItems = new TrackedItems<>(new ArrayList<>(), Todo::observables);
+		w.agenda.setCellFactory(param -> new AgendaCell());
+		w.agenda.setItems(this.agendaItems);
+		w.agenda.setOnMouseClicked(event -> this.showAgendaItem(w.agenda.getSelectionModel().getSelectedItem()));
+		w.agendaRange.setItems(FXCollections.observableArrayList(DueDateIndex.Agenda.values()));
+		w.agendaRange.setValue(DueDateIndex.Agenda.PAST_DUE);
+		w.agendaRange.valueProperty().addListener((observable, oldValue, newValue) -> this.updateAgenda());
+		w.search.setText("");
+		w.search.textProperty().addListener((observable, oldValue, newValue) -> {
+			this.updateAgenda();
+			if (!newValue.trim().isEmpty()) {
+				int found = this.agendaItems.size();
+				this.updateStatusLine(found + (found < MAX_SEARCH_RESULTS ? "" : "+") + " items found");
 			}
-			lv.getSelectionModel().selectedIndexProperty().addListener(event -> {
-				this.updateSelectedTodo();
-			});
-			lv.setCellFactory(param -> new TodoListCell());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todos'");
-		}
-		n = primaryStage.getScene().lookup("#menuSave");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> {
-				if (this.filename != null) {
-					this.export(this.filename);
-				} else {
-					this.showSaveAs();
-				}
-			});
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couln’t find element '#menuSave'");
-		}
-		n = primaryStage.getScene().lookup("#menuSaveAs");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> this.showSaveAs());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#menuSaveAs'");
-		}
-		n = primaryStage.getScene().lookup("#menuClose");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showCloseDialog());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#menuClose'");
-		}
+		});
+		this.updateAgenda();
+		w.todoLists.setCellFactory(param -> new TodoListNameCell());
+		w.todoLists.setItems(this.todoLists);
+		w.todoLists.scrollTo(currentUser.getTodoList("Default"));
+		w.todoLists.getSelectionModel().select(currentUser.getTodoList("Default"));
+		w.todoLists.getSelectionModel().selectedIndexProperty().addListener(event -> {
+			this.updateSelectedTodoList();
+		});
+		this.currentTodoList = currentUser.getTodoList("Default");
+		w.todosSort.setItems(FXCollections.observableArrayList(TodoView.Sort.values()));
+		w.todosSort.setValue(TodoView.Sort.LIST);
+		this.showTodos(this.currentTodoList.getObservableTodos());
+		if (!w.todos.getItems().isEmpty()) {
+			w.todos.getSelectionModel().select(0);
+		}
+		w.todos.getSelectionModel().selectedIndexProperty().addListener(event -> {
+			this.updateSelectedTodo();
+		});
+		w.todos.setCellFactory(param -> new TodoListCell());
+		// filter and sort the items
+		w.todosShowDone.setOnAction(event -> this.updateTodoFilter());
+		w.todosPastDue.setOnAction(event -> this.updateTodoFilter());
+		w.todosSort.valueProperty().addListener((observable, oldValue, newValue) -> {
+			if (this.todoView != null && newValue != null) {
+				this.todoView.setSort(newValue);
+			}
+		});
+		w.menuSave.setOnAction(event -> {
+			if (this.filename != null) {
+				this.export(this.filename);
+			} else {
+				this.showSaveAs();
+			}
+		});
+		w.menuSaveAs.setOnAction(event -> this.showSaveAs());
+		w.menuClose.setOnAction(event -> showCloseDialog());
 		this.primaryStage.setOnCloseRequest(event -> showCloseDialog());
-		n = primaryStage.getScene().lookup("#todoDetailSave");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> this.saveTodoEntry());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoDetailSave'");
-		}
-		n = primaryStage.getScene().lookup("#todoDetailDueDate");
-		if (n != null && n instanceof CheckBox) {
-			((CheckBox) n).setOnAction(event -> this.detailUpdateDueDatePicker());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoDetailDueDate'");
-		}
+		w.todoDetailSave.setOnAction(event -> this.saveTodoEntry());
+		w.todoDetailDueDate.setOnAction(event -> this.detailUpdateDueDatePicker());
 		// handle new  TodoList
-		n = primaryStage.getScene().lookup("#todoListNew");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> {
-				this.buttonAction = "new";
-				this.showTodoListEdit();
-			});
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couln’t find element '#todoListNew'");
-		}
+		w.todoListNew.setOnAction(event -> {
+			this.buttonAction = "new";
+			this.showTodoListEdit();
+		});
 		// handle edit TodoList
-		n = primaryStage.getScene().lookup("#todoListEdit");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> {
-				this.buttonAction = "edit";
-				this.showTodoListEdit();
-			});
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoListEdit'");
-		}
+		w.todoListEdit.setOnAction(event -> {
+			this.buttonAction = "edit";
+			this.showTodoListEdit();
+		});
 		// handle delete TodoList
-		n = primaryStage.getScene().lookup("#todoListDelete");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showDeleteList());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoListDelete'");
-		}
+		w.todoListDelete.setOnAction(event -> showDeleteList());
 		// toggle todo
-		n = primaryStage.getScene().lookup("#todoToggleDone");
-		if (n != null && n instanceof ToggleButton) {
-			((ToggleButton) n).setOnAction(event -> toggleDone());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoToggleDone'");
-		}
+		w.todoToggleDone.setOnAction(event -> toggleDone());
 		// toggle star
-		n = primaryStage.getScene().lookup("#todoToggleStar");
-		if (n != null && n instanceof ToggleButton) {
-			((ToggleButton) n).setOnAction(event -> toggleStar());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoToggleStar'");
-		}
+		w.todoToggleStar.setOnAction(event -> toggleStar());
 		// add new todo item
-		n = primaryStage.getScene().lookup("#todoNew");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> newTodoItem());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoNew'");
-		}
+		w.todoNew.setOnAction(event -> newTodoItem());
 		// delete todo item
-		n = primaryStage.getScene().lookup("#todoDelete");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showDeleteItem());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoDelete'");
-		}
+		w.todoDelete.setOnAction(event -> showDeleteItem());
 		// change password
-		n = primaryStage.getScene().lookup("#menuChangePassword");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showChangePassword());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#menuChangePassword'");
-		}
+		w.menuChangePassword.setOnAction(event -> showChangePassword());
 		// change eMail
-		n = primaryStage.getScene().lookup("#menuChangeEmail");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showChangeEmail());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#menuChangeEmail'");
-		}
+		w.menuChangeEmail.setOnAction(event -> showChangeEmail());
 		// log out
-		n = primaryStage.getScene().lookup("#menuLogout");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showLoginDialog());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#menuLogout'");
-		}
+		w.menuLogout.setOnAction(event -> showLoginDialog());
 		// move todo item
-		n = primaryStage.getScene().lookup("#todoMove");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> showMoveTodoItem());
-		} else {
-			ErrorPrinter.printWarning("showMainWindow > Couldn’t find element '#todoMove'");
-		}
+		w.todoMove.setOnAction(event -> showMoveTodoItem());
+		w.todoListNewNameSave.setOnAction(event -> this.saveTodoListEdit());
 	}
 
 	private void updateSelectedTodoList() {
-		Node n = primaryStage.getScene().lookup("#todoLists");
-		if (n == null || !(n instanceof ListView)) {
-			ErrorPrinter.printWarning("updateSelectedTodoList > updateSelectedTodoList > Couldn’t find element '#todoLists'");
-			return;
-		}
-		ListView l = (ListView) n;
-		n = primaryStage.getScene().lookup("#todos");
-		if (n == null || !(n instanceof ListView)) {
-			ErrorPrinter.printWarning("updateSelectedTodoList > updateSelectedTodoList > Couldn’t find element '#todos'");
-			return;
-		}
-		ListView<Todo> lt = (ListView) n;
-		if (l.getSelectionModel().getSelectedItem() != null && l.getSelectionModel().getSelectedItem() instanceof TodoList) {
-			TodoList t = (TodoList) l.getSelectionModel().getSelectedItem();
+		MainWindow w = this.mainWindow;
+		TodoList t = w.todoLists.getSelectionModel().getSelectedItem();
+		if (t != null) {
 			primaryStage.setTitle("TodoList :: " + currentUser.getUsername() + " > " + t.getName());
-			this.todos = new ObservableListWrapper<>(t.getTodos());
-			lt.setItems(this.todos);
-			lt.getSelectionModel().select(0);
+			this.currentTodoList = t;
+			this.showTodos(t.getObservableTodos());
+			w.todos.getSelectionModel().select(0);
 			// update buttons :)
-			n = primaryStage.getScene().lookup("#todoListEdit");
-			if (n != null && n instanceof Button) {
-				n.setDisable(!t.isChangeable());
-			}
-			n = primaryStage.getScene().lookup("#todoListDelete");
-			if (n != null && n instanceof Button) {
-				n.setDisable(!t.isChangeable());
-			}
+			w.todoListEdit.setDisable(!t.isChangeable());
+			w.todoListDelete.setDisable(!t.isChangeable());
 			// if there is no todo item, empty the currentTodo
 			this.currentTodo = null;
 		}
 		updateSelectedTodo();
 	}
 
-	private void updateSelectedTodo() {
-		Node n = primaryStage.getScene().lookup("#todos");
-		if (n != null && n instanceof ListView) {
-			ListView<Todo> lv = (ListView<Todo>) n;
-			if (lv.getSelectionModel().getSelectedItem() != null) {
-				this.currentTodo = lv.getSelectionModel().getSelectedItem();
-			}
-		}
-		// title
-		n = primaryStage.getScene().lookup("#todoDetailTitle");
-		if (n == null || !(n instanceof TextField)) {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoDetailTitle'");
-			return;
-		}
-		((TextField) n).setText(this.currentTodo == null ? "" : this.currentTodo.getTitle());
-		// comment
-		n = primaryStage.getScene().lookup("#todoDetailDescription");
-		if (n == null || !(n instanceof TextArea)) {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoDetailDescription'");
+	/**
+	 * Show the items of a TodoList, filtered and sorted like the previous ones
+	 *
+	 * @param todos the items
+	 */
+	private void showTodos(ObservableList<Todo> todos) {
+		MainWindow w = this.mainWindow;
+		this.todos = todos;
+		this.todoView = new TodoView(todos, w.todosShowDone.isSelected(), w.todosPastDue.isSelected(), w.todosSort.getValue());
+		w.todos.setItems(this.todoView);
+	}
+
+	/**
+	 * Show the items found by the search, or the items of the selected agenda range if nothing is searched
+	 */
+	private void updateAgenda() {
+		if (this.mainWindow == null || this.dueDateIndex == null) {
 			return;
 		}
-		((TextArea) n).setText(this.currentTodo == null ? "" : this.currentTodo.getComment());
-		// if dueDate set:
-		n = primaryStage.getScene().lookup("#todoDetailDueDate");
-		if (n == null || !(n instanceof CheckBox)) {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoDetailDueDate'");
+		String query = this.mainWindow.search.getText();
+		if (query != null && !query.trim().isEmpty()) {
+			this.agendaItems.setAll(this.searchIndex.search(query, MAX_SEARCH_RESULTS));
 			return;
 		}
-		boolean dueDate = this.currentTodo != null && this.currentTodo.getDueDate() != null;
-		((CheckBox) n).setSelected(dueDate);
-		// datePicker
-		n = primaryStage.getScene().lookup("#todoDetailDate");
-		if (n == null || !(n instanceof DatePicker)) {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoDetailDate'");
-			return;
+		DueDateIndex.Agenda range = this.mainWindow.agendaRange.getValue();
+		if (range != null) {
+			this.agendaItems.setAll(range.query(this.dueDateIndex, System.currentTimeMillis()));
 		}
-		if (dueDate) {
-			((DatePicker) n).setValue(LocalDateTime.ofInstant(this.currentTodo.getDueDate().getTime().toInstant(), ZoneId.systemDefault()).toLocalDate());
-			n.setDisable(false);
-		} else {
-			((DatePicker) n).setValue(null);
-			n.setDisable(true);
+	}
+
+	/**
+	 * Update the agenda once after the current changes
+	 */
+	private void updateAgendaLater() {
+		if (!this.agendaPending) {
+			this.agendaPending = true;
+			Platform.runLater(() -> {
+				this.agendaPending = false;
+				this.updateAgenda();
+			});
 		}
-		// time
-		n = primaryStage.getScene().lookup("#todoDetailTime");
-		if (n == null || !(n instanceof TextField)) {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoDetailTime'");
+	}
+
+	/**
+	 * Select the list and the item chosen in the agenda
+	 *
+	 * @param todo the item
+	 */
+	private void showAgendaItem(Todo todo) {
+		if (todo == null || !(todo.getParent() instanceof TodoList)) {
 			return;
 		}
+		MainWindow w = this.mainWindow;
+		w.todoLists.getSelectionModel().select((TodoList) todo.getParent());
+		w.todos.getSelectionModel().select(todo);
+		w.todos.scrollTo(todo);
+	}
+
+	/**
+	 * Apply the state of the filter buttons to the items
+	 */
+	private void updateTodoFilter() {
+		MainWindow w = this.mainWindow;
+		this.todoView.setFilter(w.todosShowDone.isSelected(), w.todosPastDue.isSelected());
+		this.updateStatusLine(w.todos.getItems().size() + " of " + this.todos.size() + " items shown");
+	}
+
+	private void updateSelectedTodo() {
+		MainWindow w = this.mainWindow;
+		if (w.todos.getSelectionModel().getSelectedItem() != null) {
+			this.currentTodo = w.todos.getSelectionModel().getSelectedItem();
+		}
+		// title
+		w.todoDetailTitle.setText(this.currentTodo == null ? "" : this.currentTodo.getTitle());
+		// comment
+		w.todoDetailDescription.setText(this.currentTodo == null ? "" : this.currentTodo.getComment());
+		// if dueDate set:
+		boolean dueDate = this.currentTodo != null && this.currentTodo.hasDueDate();
+		w.todoDetailDueDate.setSelected(dueDate);
+		// datePicker and time
 		if (dueDate) {
-			((TextField) n).setText(this.currentTodo.getTime());
-			n.setDisable(false);
+			w.todoDetailDate.setValue(this.currentTodo.getDueLocalDate());
+			w.todoDetailDate.setDisable(false);
+			w.todoDetailTime.setText(this.currentTodo.getTime());
+			w.todoDetailTime.setDisable(false);
 		} else {
-			n.setDisable(true);
-			((TextField) n).setText("00:00");
+			w.todoDetailDate.setValue(null);
+			w.todoDetailDate.setDisable(true);
+			w.todoDetailTime.setDisable(true);
+			w.todoDetailTime.setText("00:00");
 		}
 		// stared
-		n = primaryStage.getScene().lookup("#todoToggleStar");
-		if (n != null && n instanceof ToggleButton) {
-			((ToggleButton) n).setSelected(currentTodo != null && currentTodo.isPrio());
-		} else {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoToggleStar'");
-		}
+		w.todoToggleStar.setSelected(currentTodo != null && currentTodo.isPrio());
 		// done
-		n = primaryStage.getScene().lookup("#todoToggleDone");
-		if (n != null && n instanceof ToggleButton) {
-			((ToggleButton) n).setSelected(currentTodo != null && currentTodo.isDone());
-		} else {
-			ErrorPrinter.printWarning("updateSelectedTodo > Couldn’t find element '#todoToggleDone'");
-		}
+		w.todoToggleDone.setSelected(currentTodo != null && currentTodo.isDone());
 	}
 
 	private void updateStatusLine(String text) {
-		Node n = primaryStage.getScene().lookup("#statusLine");
-		if (n != null && n instanceof Label) {
-			((Label) n).setText(text);
+		if (this.mainWindow != null) {
+			this.mainWindow.statusLine.setText(text);
 		} else {
-			ErrorPrinter.printWarning("updateStatusLine > Couldn’t find element '#statusLine'");
+			// there is no status line outside of the main window
+			ErrorPrinter.printInfo(() -> "updateStatusLine > " + text);
 		}
 	}
 
@@ -528,7 +656,7 @@ public class Controller {
 		}
 		save.setTitle("Save as ...");
 		save.show();
-		Node n = primaryStage.getScene().lookup("#filename");
+		Node n = save.getScene().lookup("#filename");
 		if (n != null && n instanceof TextField && this.filename != null) {
 			((TextField) n).setText(this.filename);
 		}
@@ -543,6 +671,7 @@ public class Controller {
 							this.filename = f.getText();
 						if (this.export(f.getText())) {
 							if (exitAfterSave) {
+								this.closeAutoSaver();
 								Platform.exit();
 							} else {
 								save.close();
@@ -560,201 +689,137 @@ public class Controller {
 			this.updateStatusLine("No item selected!");
 			return;
 		}
-		Node lv = primaryStage.getScene().lookup("#todos");
-		if (lv == null || !(lv instanceof ListView)) {
-			this.updateStatusLine("Could’t get todo-ListView!");
-			ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #todos!");
-			return;
-		}
-		// title
-		Node n = primaryStage.getScene().lookup("#todoDetailTitle");
-		if (n == null || !(n instanceof TextField)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailTitle");
-			ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #todoDetailTitle!");
-			return;
-		}
-		this.currentTodo.setTitle(((TextField) n).getText());
-		// description
-		n = primaryStage.getScene().lookup("#todoDetailDescription");
-		if (n == null || !(n instanceof TextArea)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailDescription");
-			ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #statusLine!");
-			return;
-		}
-		this.currentTodo.setComment(((TextArea) n).getText());
-		// date
-		n = primaryStage.getScene().lookup("#todoDetailDueDate");
-		if (n == null || !(n instanceof CheckBox)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailDueDate");
-			ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #todoDetailDueDate!");
-			return;
-		}
-		if (!((CheckBox) n).isSelected()) {
-			this.currentTodo.setDueDate(null);
-		} else {
-			n = primaryStage.getScene().lookup("#todoDetailDate");
-			if (n == null || !(n instanceof DatePicker)) {
-				this.updateStatusLine("Couldn’t load data from todoDetailDate");
-				ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #todoDetailDate!");
-				return;
-			}
-			LocalDate dd = ((DatePicker) n).getValue();
-			// time
-			n = primaryStage.getScene().lookup("#todoDetailTime");
-			if (n == null || !(n instanceof TextField)) {
-				this.updateStatusLine("Couldn’t load data from todoDetailDate");
-				ErrorPrinter.printWarning("saveTodoEntry > Didn’t find element #todoDetailDate!");
-				return;
-			}
+		MainWindow w = this.mainWindow;
+		// the view moves the item after each setter, which selects another one and fills in its details
+		Todo todo = this.currentTodo;
+		String title = w.todoDetailTitle.getText();
+		String comment = w.todoDetailDescription.getText();
+		boolean dueDate = w.todoDetailDueDate.isSelected();
+		LocalDate dd = w.todoDetailDate.getValue();
+		String time = w.todoDetailTime.getText();
+		// date and time
+		if (dueDate) {
 			if (dd == null) {
 				this.updateStatusLine("Invalid date!");
 				return;
 			}
-			if (!this.currentTodo.validateTime(((TextField) n).getText())) {
+			if (!todo.validateTime(time)) {
 				this.updateStatusLine("Invalid time format, use HH:MM!");
 				return;
 			}
-			this.currentTodo.setDueDate(dd, ((TextField) n).getText());
 		}
-		this.notifyList(this.todos, this.currentTodo);
+		todo.setTitle(title);
+		todo.setComment(comment);
+		if (dueDate) {
+			todo.setDueDate(dd, time);
+		} else {
+			todo.setDueDate(null);
+		}
+		this.autoSaver.changed(journal -> journal.todoUpdated(this.currentUser, todo));
+		this.selectTodo(todo);
 		this.updateStatusLine("Item updated!");
 	}
 
-	private void detailUpdateDueDatePicker() {
-		Node n = primaryStage.getScene().lookup("#todoDetailDueDate");
-		if (n == null || !(n instanceof CheckBox)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailDueDate");
-			ErrorPrinter.printWarning("detailUpdateDueDatePicker > Didn’t find element #todoDetailDueDate!");
-			return;
-		}
-		boolean enable = ((CheckBox) n).isSelected();
-		n = primaryStage.getScene().lookup("#todoDetailDate");
-		if (n == null || !(n instanceof DatePicker)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailDate");
-			ErrorPrinter.printWarning("detailUpdateDueDatePicker > Didn’t find element #todoDetailDue!");
+	/**
+	 * Select an item again after the view moved it
+	 *
+	 * @param todo the item
+	 */
+	private void selectTodo(Todo todo) {
+		MainWindow w = this.mainWindow;
+		if (w.todos.getSelectionModel().getSelectedItem() == todo) {
 			return;
 		}
-		n.setDisable(!enable);
-		n = primaryStage.getScene().lookup("#todoDetailTime");
-		if (n == null || !(n instanceof TextField)) {
-			this.updateStatusLine("Couldn’t load data from todoDetailTime");
-			ErrorPrinter.printWarning("detailUpdateDueDatePicker > Didn’t find element #todoDetailTime!");
-			return;
+		// the item is not in the view if the filter hides it now
+		int index = w.todos.getItems().indexOf(todo);
+		if (index >= 0) {
+			w.todos.getSelectionModel().select(index);
+			w.todos.scrollTo(index);
 		}
-		n.setDisable(!enable);
+	}
+
+	private void detailUpdateDueDatePicker() {
+		MainWindow w = this.mainWindow;
+		boolean enable = w.todoDetailDueDate.isSelected();
+		w.todoDetailDate.setDisable(!enable);
+		w.todoDetailTime.setDisable(!enable);
 	}
 
 	private void showTodoListEdit() {
-		Node n = this.primaryStage.getScene().lookup("#todoListToolBar");
-		if (n == null || !(n instanceof ToolBar)) {
-			this.updateStatusLine("Couldn’t get 'todoListToolBar'");
-			ErrorPrinter.printWarning("showTodoListEdit > Didn’t find element #todoListToolBar!");
-			return;
-		}
-		n.setDisable(false);
-		n.setVisible(true);
-		n = primaryStage.getScene().lookup("#todoListNewNameSave");
-		if (n != null && n instanceof Button) {
-			((Button) n).setOnAction(event -> this.saveTodoListEdit());
-		} else {
-			ErrorPrinter.printError("showTodoListEdit > Couldn’t read 'todoListNewNameSave'");
-		}
-		n = primaryStage.getScene().lookup("#todoListNewName");
-		if (n == null || !(n instanceof TextField)) {
-			this.updateStatusLine("Couldn’t get 'todoListNewName'");
-			ErrorPrinter.printWarning("showTodoListEdit > Didn’t find element #todoListNewName!");
-			return;
-		}
+		MainWindow w = this.mainWindow;
+		w.todoListToolBar.setDisable(false);
+		w.todoListToolBar.setVisible(true);
 		if (this.buttonAction.equals("edit")) {
-			Node l = primaryStage.getScene().lookup("#todoLists");
-			if (l == null || !(l instanceof ListView)) {
-				this.updateStatusLine("Couldn’t get 'todoLists'");
-				ErrorPrinter.printWarning("showTodoListEdit > Didn’t find element #todoLists!");
-				return;
-			}
-			ListView lv = (ListView) l;
-			if (lv.getSelectionModel().getSelectedItem() != null && lv.getSelectionModel().getSelectedItem() instanceof TodoList) {
-				((TextField) n).setText(((TodoList) lv.getSelectionModel().getSelectedItem()).getName());
-			} else {
-				((TextField) n).setText("Unknown Name");
-			}
+			TodoList selected = w.todoLists.getSelectionModel().getSelectedItem();
+			w.todoListNewName.setText(selected != null ? selected.getName() : "Unknown Name");
 		} else {
-			((TextField) n).setText("New TodoList");
+			w.todoListNewName.setText("New TodoList");
 		}
 	}
 
 	private void saveTodoListEdit() {
-		Node n = primaryStage.getScene().lookup("#todoListNewName");
-		if (n == null || !(n instanceof TextField)) {
-			this.updateStatusLine("Couldn’t get 'todoListNewName'");
-			ErrorPrinter.printWarning("saveTodoListEdit > Didn’t find element #todoListNewName!");
-			return;
-		}
-		String name = ((TextField) n).getText();
-		((TextField) n).setText("");
+		MainWindow w = this.mainWindow;
+		String name = w.todoListNewName.getText();
 		if (this.buttonAction.equals("new")) {
-			this.todoLists.add(new TodoList(name));
+			if (this.currentUser.hasTodoList(name)) {
+				this.updateStatusLine("A TodoList named '" + name + "' already exists!");
+				return;
+			}
+			w.todoListNewName.setText("");
+			TodoList t = new TodoList(name);
+			this.todoLists.add(t);
+			this.autoSaver.changed(journal -> journal.listCreated(this.currentUser, t));
 			this.updateStatusLine("New TodoList generated!");
 		} else {
 			// edit existing one ...
-			n = primaryStage.getScene().lookup("#todoLists");
-			if (n == null || !(n instanceof ListView)) {
-				return;
-			}
-			ListView l = (ListView) n;
-			if (l.getSelectionModel().getSelectedItem() != null && l.getSelectionModel().getSelectedItem() instanceof TodoList) {
-				TodoList t = (TodoList) l.getSelectionModel().getSelectedItem();
+			TodoList t = w.todoLists.getSelectionModel().getSelectedItem();
+			if (t != null) {
+				TodoList existing = this.currentUser.getTodoList(name);
+				if (existing != null && existing != t) {
+					this.updateStatusLine("A TodoList named '" + name + "' already exists!");
+					return;
+				}
+				w.todoListNewName.setText("");
 				t.setName(name);
-				this.notifyList(this.todoLists, this.currentTodo);
+				this.autoSaver.changed(journal -> journal.listRenamed(this.currentUser, t));
 				this.updateStatusLine("TodoList renamed!");
 			}
 		}
-		n = this.primaryStage.getScene().lookup("#todoListToolBar");
-		if (n == null || !(n instanceof ToolBar)) {
-			ErrorPrinter.printWarning("saveTodoListEdit > Didn’t find element #todoListToolBar!");
-			return;
-		}
-		n.setDisable(true);
-		n.setVisible(false);
+		w.todoListToolBar.setDisable(true);
+		w.todoListToolBar.setVisible(false);
 	}
 
 	private void toggleDone() {
 		if (this.currentTodo == null)
 			return;
-		Node n = primaryStage.getScene().lookup("#todoToggleDone");
-		if (n == null || !(n instanceof ToggleButton)) {
-			ErrorPrinter.printWarning("toggleDone > Didn’t find element #todoToggleDone!");
-			return;
+		Todo todo = this.currentTodo;
+		todo.setDone(!todo.isDone());
+		this.autoSaver.changed(journal -> journal.todoFlagsChanged(this.currentUser, todo));
+		this.selectTodo(todo);
+		if (this.currentTodo == todo) {
+			this.mainWindow.todoToggleDone.setSelected(todo.isDone());
 		}
-		this.currentTodo.setDone(!this.currentTodo.isDone());
-		((ToggleButton) n).setSelected(this.currentTodo.isDone());
-		this.notifyList(todos, currentTodo);
 	}
 
 	private void toggleStar() {
 		if (this.currentTodo == null)
 			return;
-		Node n = primaryStage.getScene().lookup("#todoToggleStar");
-		if (n == null || !(n instanceof ToggleButton)) {
-			ErrorPrinter.printWarning("toggleStar > Didn’t find element #todoToggleStar!");
-			return;
+		Todo todo = this.currentTodo;
+		todo.setPrio(!todo.isPrio());
+		this.autoSaver.changed(journal -> journal.todoFlagsChanged(this.currentUser, todo));
+		this.selectTodo(todo);
+		if (this.currentTodo == todo) {
+			this.mainWindow.todoToggleStar.setSelected(todo.isPrio());
 		}
-		this.currentTodo.setPrio(!this.currentTodo.isPrio());
-		((ToggleButton) n).setSelected(this.currentTodo.isPrio());
-		this.notifyList(todos, currentTodo);
 	}
 
 	private void newTodoItem() {
 		Todo t = new Todo("New Item", "Edit this item :-)");
 		this.todos.add(t);
+		this.autoSaver.changed(journal -> journal.todoCreated(this.currentUser, this.currentTodoList, t));
 		this.updateStatusLine("Item added!");
-		Node n = primaryStage.getScene().lookup("#todos");
-		if (n == null || !(n instanceof ListView)) {
-			ErrorPrinter.printWarning("newTodoItem > Didn’t find element #todos!");
-			return;
-		}
-		((ListView) n).getSelectionModel().select(t);
-		((ListView) n).scrollTo(t);
+		this.mainWindow.todos.getSelectionModel().select(t);
+		this.mainWindow.todos.scrollTo(t);
 	}
 
 	private void showDeleteItem() {
@@ -775,7 +840,10 @@ public class Controller {
 		n = delete.getScene().lookup("#yes");
 		if (n != null && n instanceof Button)
 			((Button) n).setOnAction(event -> {
-				this.todos.remove(this.currentTodo);
+				// removing the item selects another one
+				Todo todo = this.currentTodo;
+				this.todos.remove(todo);
+				this.autoSaver.changed(journal -> journal.todoDeleted(this.currentUser, todo));
 				this.updateStatusLine("Deleted item!");
 				delete.close();
 			});
@@ -791,28 +859,21 @@ public class Controller {
 			e.printStackTrace();
 			return;
 		}
-		Node n = primaryStage.getScene().lookup("#todoLists");
-		if (n == null || !(n instanceof ListView)) {
-			ErrorPrinter.printWarning("showDeleteList > Didn’t find element #todoLists!");
-			return;
-		}
-		ListView l = (ListView) n;
-		TodoList t;
-		if (l.getSelectionModel().getSelectedItem() != null && l.getSelectionModel().getSelectedItem() instanceof TodoList) {
-			t = (TodoList) l.getSelectionModel().getSelectedItem();
-		} else {
+		TodoList t = this.mainWindow.todoLists.getSelectionModel().getSelectedItem();
+		if (t == null) {
 			ErrorPrinter.printWarning("showDeleteList > Didn’t find selected item!");
 			return;
 		}
 		delete.setTitle("Delete '" + t.getName() + "'");
 		delete.show();
-		n = delete.getScene().lookup("#no");
+		Node n = delete.getScene().lookup("#no");
 		if (n != null && n instanceof Button)
 			((Button) n).setOnAction(event -> delete.close());
 		n = delete.getScene().lookup("#yes");
 		if (n != null && n instanceof Button)
 			((Button) n).setOnAction(event -> {
 				this.todoLists.remove(t);
+				this.autoSaver.changed(journal -> journal.listDeleted(this.currentUser, t));
 				this.updateStatusLine("Deleted TodoList!");
 				delete.close();
 			});
@@ -879,6 +940,7 @@ public class Controller {
 				return;
 			}
 			this.currentUser.setPassword(pw);
+			this.autoSaver.changed(journal -> journal.passwordChanged(this.currentUser));
 			change.close();
 		});
 	}
@@ -950,6 +1012,7 @@ public class Controller {
 				return;
 			}
 			this.currentUser.setEmail(email);
+			this.autoSaver.changed(journal -> journal.emailChanged(this.currentUser));
 			change.close();
 		});
 	}
@@ -979,6 +1042,7 @@ public class Controller {
 		((Button) n).setOnAction(event -> {
 			if (this.filename != null) {
 				this.export(this.filename);
+				this.closeAutoSaver();
 				Platform.exit();
 			} else {
 				this.showSaveAs(true);
@@ -989,7 +1053,14 @@ public class Controller {
 			ErrorPrinter.printWarning("showCloseDialog > Didn’t find element #close");
 			return;
 		}
-		((Button) n).setOnAction(event -> Platform.exit());
+		if (this.autoSaver != null && this.autoSaver.getTarget() != null) {
+			// the pending changes are written anyway, there is nothing to discard
+			((Button) n).setText("Yes, changes are saved automatically");
+		}
+		((Button) n).setOnAction(event -> {
+			this.closeAutoSaver();
+			Platform.exit();
+		});
 	}
 
 	private void showMoveTodoItem() {
@@ -1011,16 +1082,8 @@ public class Controller {
 		}
 		((TextField) n).setText(this.currentTodo.getTitle());
 		// get current TodoList
-		n = primaryStage.getScene().lookup("#todoLists");
-		if (n == null || !(n instanceof ListView)) {
-			ErrorPrinter.printWarning("showMoveTodoItem > Didn’t find element #todoLists!");
-			return;
-		}
-		ListView l = (ListView) n;
-		TodoList t;
-		if (l.getSelectionModel().getSelectedItem() != null && l.getSelectionModel().getSelectedItem() instanceof TodoList) {
-			t = (TodoList) l.getSelectionModel().getSelectedItem();
-		} else {
+		TodoList t = this.mainWindow.todoLists.getSelectionModel().getSelectedItem();
+		if (t == null) {
 			ErrorPrinter.printWarning("showMoveTodoItem > Didn’t find selected item!");
 			return;
 		}
@@ -1060,47 +1123,82 @@ public class Controller {
 				this.updateStatusLine("Invalid selection!");
 				return;
 			}
-			list.addTodo(this.currentTodo);
+			// removing the item selects another one
+			Todo todo = this.currentTodo;
+			boolean added = list.addTodo(todo);
 			// then delete the item in the source list
-			todos.remove(this.currentTodo);
+			todos.remove(todo);
+			this.autoSaver.changed(journal -> {
+				// moving to the source list itself drops the item
+				if (added) {
+					journal.todoMoved(this.currentUser, todo, list);
+				} else {
+					journal.todoDeleted(this.currentUser, todo);
+				}
+			});
 			// update current list
 			move.close();
 		});
 	}
 
-	/**
-	 * Notify a list about a changed item
-	 * Taken from: http://stackoverflow.com/a/21435063
-	 *
-	 * @param list        the list containing the changed item
-	 * @param changedItem the item itself
-	 */
-	protected void notifyList(List list, Object changedItem) {
-		int index = list.indexOf(changedItem);
-		if (index >= 0) {
-			// hack around RT-28397
-			//https://javafx-jira.kenai.com/browse/RT-28397
-			list.set(index, null);
-			// good enough since jdk7u40 and jdk8
-			list.set(index, changedItem);
+	static class TodoListCell extends ListCell<Todo> {
+		// shared by all cells, parsing a colour or loading the icon for every update would allocate while scrolling
+		private static final Paint TEXT = Color.web("#000000");
+		private static final Paint TEXT_DONE = Color.web("#999999");
+		private static final Paint TEXT_PAST_DUE = Color.web("#aa0000");
+		private static Image star = null;
+
+		private ImageView icon = null;
+
+		/**
+		 * Get the icon of items with high priority
+		 *
+		 * @return the icon of this cell
+		 */
+		private ImageView icon() {
+			if (this.icon == null) {
+				if (star == null) {
+					star = new Image(Controller.class.getResource("images/rating.png").toExternalForm());
+				}
+				this.icon = new ImageView(star);
+			}
+			return this.icon;
+		}
+
+		@Override
+		public void updateItem(Todo item, boolean empty) {
+			super.updateItem(item, empty);
+			if (!empty && item != null) {
+				this.setGraphic(item.isPrio() && !item.isDone() ? this.icon() : null);
+				this.setTextFill(item.isDone() ? TEXT_DONE : (item.isOverdue() ? TEXT_PAST_DUE : TEXT));
+				this.setText(item.getLabel());
+			} else {
+				this.setGraphic(null);
+				this.setTextFill(TEXT);
+				this.setText("");
+			}
 		}
 	}
 
-	static class TodoListCell extends ListCell<Todo> {
+	static class AgendaCell extends TodoListCell {
 		@Override
 		public void updateItem(Todo item, boolean empty) {
+			super.updateItem(item, empty);
+			if (!empty && item != null && item.getParent() instanceof TodoList) {
+				this.setText(item.getLabel() + " – " + ((TodoList) item.getParent()).getName());
+			}
+		}
+	}
+
+	static class TodoListNameCell extends ListCell<TodoList> {
+		@Override
+		public void updateItem(TodoList item, boolean empty) {
 			super.updateItem(item, empty);
 			if (!empty && item != null) {
-				if (item.isPrio() && !item.isDone()) {
-					this.setStyle("-fx-graphic:url(/de/t_battermann/dhbw/todolist/images/rating.png);");
-				} else {
-					this.setStyle("-fx-graphic:null;");
-				}
-				this.setTextFill(Paint.valueOf(item.isDone() ? "#999999" : (item.pastDue() ? "#aa0000" : "#000000")));
-				this.setText(item.getTitle() + (item.getDueDate() != null ? " (due: " + item.getDateTime() + ")" : ""));
+				this.setTextFill(item.isOverdue() ? TodoListCell.TEXT_PAST_DUE : TodoListCell.TEXT);
+				this.setText(item.getName());
 			} else {
-				this.setStyle("-fx-graphic:null;");
-				this.setTextFill(Paint.valueOf("#000000"));
+				this.setTextFill(TodoListCell.TEXT);
 				this.setText("");
 			}
 		}
@@ -0,0 +1,120 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Loads a file in the background.
+ * <p>
+ * The users are imported and the journal of the file is replayed first. As soon as the credentials of all users are
+ * known the value of the task is set to the users, so the login can be shown while the task keeps running: a binary
+ * snapshot only contains the credentials and the positions of the TodoLists, the TodoLists of the users are decoded
+ * in advance afterwards (see {@link User.TodoListLoader#prefetch()}). XML and CSV files mix the users with their
+ * TodoLists, the users are complete when the value is set.
+ * <p>
+ * The progress of the task is the share of the file read and then the share of the users decoded, the message
+ * reports the bytes and records read per second. The task can be cancelled while it imports the file, or later to stop
+ * decoding the TodoLists, e.g. once a user logged in.
+ */
+final class DatabaseLoader extends Task<Map<String, User>> {
+	private final File file;
+	private final ExportHandler handler;
+	// set before the value is set
+	private volatile UuidIndex uuidIndex = null;
+	private volatile int replayed = 0;
+
+	/**
+	 * Instantiates a new DatabaseLoader.
+	 *
+	 * @param file    the file
+	 * @param handler the handler for the format of the file
+	 */
+	DatabaseLoader(File file, ExportHandler handler) {
+		this.file = file;
+		this.handler = handler;
+	}
+
+	/**
+	 * Gets file.
+	 *
+	 * @return the file
+	 */
+	File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Gets uuid index.
+	 *
+	 * @return the index of the users, available with the value
+	 */
+	UuidIndex getUuidIndex() {
+		return this.uuidIndex;
+	}
+
+	/**
+	 * Gets replayed.
+	 *
+	 * @return the number of changes replayed from the journal, available with the value
+	 */
+	int getReplayed() {
+		return this.replayed;
+	}
+
+	/**
+	 * Get a rate
+	 *
+	 * @param count the number of bytes or records
+	 * @param start the start in nanoseconds, see {@link System#nanoTime()}
+	 * @return the count per second
+	 */
+	private static double perSecond(long count, long start) {
+		return count / Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+	}
+
+	@Override
+	protected Map<String, User> call() throws Exception {
+		long start = System.nanoTime();
+		long size = Math.max(1, this.file.length());
+		this.updateMessage("Reading '" + this.file.getName() + "' ...");
+		Map<String, User> users = this.handler.importFromFile(this.file, (bytes, records) -> {
+			if (this.isCancelled()) {
+				throw new CancellationException();
+			}
+			this.updateProgress(bytes, size);
+			this.updateMessage(String.format("%.1f of %.1f MB, %.1f MB/s, %,.0f records/s", bytes / 1e6, size / 1e6, perSecond(bytes, start) / 1e6, perSecond(records, start)));
+		});
+		this.uuidIndex = new UuidIndex(users);
+		this.replayed = Journal.replay(this.file, users, this.uuidIndex);
+		ErrorPrinter.printInfo("DatabaseLoader > Read " + users.size() + " users from '" + this.file + "' in " + (System.nanoTime() - start) / 1000000 + " ms");
+		// the users must not be touched by this thread once they are handed over
+		List<User.TodoListLoader> loaders = new ArrayList<>();
+		for (User user : users.values()) {
+			if (user.getTodoListLoader() != null) {
+				loaders.add(user.getTodoListLoader());
+			}
+		}
+		this.updateValue(users);
+		long bodies = System.nanoTime();
+		long records = 0;
+		for (int i = 0; i < loaders.size() && !this.isCancelled(); i++) {
+			try {
+				records += loaders.get(i).prefetch();
+			} catch (InvalidDataException e) {
+				// reported again when the user logs in
+				ErrorPrinter.printWarning("DatabaseLoader > Couldn’t decode the TodoLists of a user: " + e.getMessage());
+			}
+			this.updateProgress(i + 1, loaders.size());
+			this.updateMessage(String.format("Loading the items of %d users, %,.0f records/s", loaders.size(), perSecond(records, bodies)));
+		}
+		if (!loaders.isEmpty()) {
+			ErrorPrinter.printInfo(String.format("DatabaseLoader > Decoded %d TodoLists and items in advance, %,.0f records/s", records, perSecond(records, bodies)));
+		}
+		return users;
+	}
+}
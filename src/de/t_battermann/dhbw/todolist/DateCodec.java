@@ -0,0 +1,264 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Formats and parses the dates used in the files and in the UI.
+ * <p>
+ * The wire format is {@code yyyyMMdd'T'HH:mm:ssZ} in the time zone of the JVM, e.g. {@code 20301002T22:40:48+0200}.
+ * Common dates are formatted into a per-thread buffer and parsed by hand without any intermediate objects, everything
+ * else (years outside of 0-9999, other offset notations) is handled by {@link DateTimeFormatter}. All methods are
+ * thread-safe.
+ */
+final class DateCodec {
+	/**
+	 * Length of a date in the wire format
+	 */
+	static final int WIRE_LENGTH = 22;
+
+	private static final DateTimeFormatter WIRE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HH:mm:ssZ");
+	// also accepts offsets like +02:00 and Z, out of range fields are carried over like SimpleDateFormat does
+	private static final DateTimeFormatter WIRE_PARSER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HH:mm:ss[XXX][Z]")
+			.withResolverStyle(ResolverStyle.LENIENT);
+	private static final ZoneId ZONE = ZoneId.systemDefault();
+	private static final ZoneRules RULES = ZONE.getRules();
+	// scratch buffer of the formatters
+	private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[WIRE_LENGTH]);
+	// offset of the last looked up instant and the interval it is valid for
+	private static volatile OffsetWindow window = new OffsetWindow(0, 0, 0);
+
+	private static class OffsetWindow {
+		final long start;
+		final long end;
+		final int offset;
+
+		OffsetWindow(long start, long end, int offset) {
+			this.start = start;
+			this.end = end;
+			this.offset = offset;
+		}
+	}
+
+	private DateCodec() {
+	}
+
+	/**
+	 * Get the offset of the time zone at a point in time
+	 *
+	 * @param millis milliseconds since the epoch
+	 * @return the offset in seconds
+	 */
+	private static int offsetAt(long millis) {
+		if (RULES.isFixedOffset()) {
+			return RULES.getOffset(Instant.EPOCH).getTotalSeconds();
+		}
+		OffsetWindow w = window;
+		if (millis >= w.start && millis < w.end) {
+			return w.offset;
+		}
+		Instant instant = Instant.ofEpochMilli(millis);
+		int offset = RULES.getOffset(instant).getTotalSeconds();
+		ZoneOffsetTransition previous = RULES.previousTransition(instant);
+		ZoneOffsetTransition next = RULES.nextTransition(instant);
+		long start = previous != null ? previous.toEpochSecond() * 1000 : Long.MIN_VALUE;
+		long end = next != null ? next.toEpochSecond() * 1000 : Long.MAX_VALUE;
+		if (millis >= start && millis < end) {
+			window = new OffsetWindow(start, end, offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Write a number with leading zeros
+	 *
+	 * @param buffer the buffer
+	 * @param pos    the position of the first digit
+	 * @param value  the number
+	 * @param digits the number of digits
+	 */
+	private static void digits(char[] buffer, int pos, int value, int digits) {
+		for (int i = pos + digits - 1; i >= pos; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Write the local date and time of a point in time
+	 *
+	 * @param millis  milliseconds since the epoch
+	 * @param offset  the offset of the time zone in seconds
+	 * @param buffer  the buffer
+	 * @param wire    true for the wire format, false for {@code yyyy-MM-dd HH:mm}
+	 * @return the number of chars written or -1 if the year is out of range
+	 */
+	private static int write(long millis, int offset, char[] buffer, boolean wire) {
+		long seconds = Math.floorDiv(millis, 1000) + offset;
+		long days = Math.floorDiv(seconds, 86400);
+		int secondOfDay = Math.floorMod(seconds, 86400);
+		// civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999) {
+			return -1;
+		}
+		int hour = secondOfDay / 3600;
+		int minute = secondOfDay / 60 % 60;
+		if (!wire) {
+			digits(buffer, 0, (int) year, 4);
+			buffer[4] = '-';
+			digits(buffer, 5, month, 2);
+			buffer[7] = '-';
+			digits(buffer, 8, day, 2);
+			buffer[10] = ' ';
+			digits(buffer, 11, hour, 2);
+			buffer[13] = ':';
+			digits(buffer, 14, minute, 2);
+			return 16;
+		}
+		digits(buffer, 0, (int) year, 4);
+		digits(buffer, 4, month, 2);
+		digits(buffer, 6, day, 2);
+		buffer[8] = 'T';
+		digits(buffer, 9, hour, 2);
+		buffer[11] = ':';
+		digits(buffer, 12, minute, 2);
+		buffer[14] = ':';
+		digits(buffer, 15, secondOfDay % 60, 2);
+		int offsetMinutes = offset / 60;
+		buffer[17] = offsetMinutes < 0 ? '-' : '+';
+		offsetMinutes = Math.abs(offsetMinutes);
+		digits(buffer, 18, offsetMinutes / 60, 2);
+		digits(buffer, 20, offsetMinutes % 60, 2);
+		return WIRE_LENGTH;
+	}
+
+	/**
+	 * Format a point in time in the wire format
+	 *
+	 * @param millis milliseconds since the epoch
+	 * @return the formatted date
+	 */
+	static String format(long millis) {
+		char[] buffer = BUFFER.get();
+		int length = write(millis, offsetAt(millis), buffer, true);
+		if (length < 0) {
+			return WIRE.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE));
+		}
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Format a point in time as {@code yyyy-MM-dd HH:mm}
+	 *
+	 * @param millis milliseconds since the epoch
+	 * @return the formatted date and time
+	 */
+	static String formatDateTime(long millis) {
+		char[] buffer = BUFFER.get();
+		int length = write(millis, offsetAt(millis), buffer, false);
+		if (length < 0) {
+			return DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE));
+		}
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Format the time of a point in time as {@code HH:mm}
+	 *
+	 * @param millis milliseconds since the epoch
+	 * @return the formatted time
+	 */
+	static String formatTime(long millis) {
+		long seconds = Math.floorDiv(millis, 1000) + offsetAt(millis);
+		int secondOfDay = Math.floorMod(seconds, 86400);
+		char[] buffer = BUFFER.get();
+		digits(buffer, 0, secondOfDay / 3600, 2);
+		buffer[2] = ':';
+		digits(buffer, 3, secondOfDay / 60 % 60, 2);
+		return new String(buffer, 0, 5);
+	}
+
+	/**
+	 * Read a number
+	 *
+	 * @param s      the text
+	 * @param pos    the position of the first digit
+	 * @param digits the number of digits
+	 * @return the number or -1 if there is a char that isn’t a digit
+	 */
+	private static int number(CharSequence s, int pos, int digits) {
+		int value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			int d = s.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Parse a date in the wire format
+	 *
+	 * @param s the text
+	 * @return milliseconds since the epoch
+	 * @throws DateTimeParseException if the text isn’t a valid date
+	 */
+	static long parse(CharSequence s) {
+		if (s.length() == WIRE_LENGTH && s.charAt(8) == 'T' && s.charAt(11) == ':' && s.charAt(14) == ':'
+				&& (s.charAt(17) == '+' || s.charAt(17) == '-')) {
+			int year = number(s, 0, 4);
+			int month = number(s, 4, 2);
+			int day = number(s, 6, 2);
+			int hour = number(s, 9, 2);
+			int minute = number(s, 12, 2);
+			int second = number(s, 15, 2);
+			int offsetHours = number(s, 18, 2);
+			int offsetMinutes = number(s, 20, 2);
+			if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour >= 0 && hour <= 23
+					&& minute >= 0 && minute <= 59 && second >= 0 && second <= 59 && offsetHours >= 0 && offsetHours <= 18
+					&& offsetMinutes >= 0 && offsetMinutes <= 59 && day <= daysInMonth(year, month)) {
+				// days since the epoch from the civil date, see http://howardhinnant.github.io/date_algorithms.html
+				int y = month <= 2 ? year - 1 : year;
+				int era = y / 400;
+				int yearOfEra = y - era * 400;
+				int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+				int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+				long days = era * 146097L + dayOfEra - 719468;
+				int offset = (offsetHours * 3600 + offsetMinutes * 60) * (s.charAt(17) == '-' ? -1 : 1);
+				return ((days * 86400) + hour * 3600 + minute * 60 + second - offset) * 1000;
+			}
+		}
+		return WIRE_PARSER.parse(s, ZonedDateTime::from).toInstant().toEpochMilli();
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+			case 2:
+				return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+}
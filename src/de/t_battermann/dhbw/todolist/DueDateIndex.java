@@ -0,0 +1,244 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * Index of the items of a user with a due date, sorted by due date.
+ * <p>
+ * The open and the done items are kept in two sorted sets keyed by the due date and the uuid, so the items due in a
+ * range are found in O(log n + k) without visiting the items of other ranges or the done items. The index is a
+ * ModelListener of the user, so it follows items being added, removed, moved and changed. Has to be used on the JavaFX
+ * thread.
+ */
+final class DueDateIndex implements ModelListener {
+	private static final long DAY = 24 * 60 * 60 * 1000;
+	private static final UUID MIN_UUID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+
+	/**
+	 * Ranges of the agenda
+	 */
+	enum Agenda {
+		PAST_DUE("past due"),
+		NEXT_DAY("next 24 hours"),
+		THIS_WEEK("this week");
+
+		private final String label;
+
+		Agenda(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Get the open items in the range
+		 *
+		 * @param index the index
+		 * @param now   milliseconds since the epoch
+		 * @return the items sorted by due date
+		 */
+		List<Todo> query(DueDateIndex index, long now) {
+			switch (this) {
+				case PAST_DUE:
+					return index.getPastDue(now);
+				case NEXT_DAY:
+					return index.getDue(now, now + DAY, false);
+				default:
+					ZoneId zone = ZoneId.systemDefault();
+					LocalDate monday = LocalDate.now(zone).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+					long from = monday.atStartOfDay(zone).toInstant().toEpochMilli();
+					long to = monday.plusWeeks(1).atStartOfDay(zone).toInstant().toEpochMilli();
+					return index.getDue(from, to, false);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.label;
+		}
+	}
+
+	/**
+	 * An item in the index, keeps the due date and the flag it was sorted by
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final long due;
+		final UUID uuid;
+		// uuids should be unique, but an imported file may contain duplicates
+		final long sequence;
+		final boolean done;
+		final Todo todo;
+
+		Entry(long due, UUID uuid, long sequence, boolean done, Todo todo) {
+			this.due = due;
+			this.uuid = uuid;
+			this.sequence = sequence;
+			this.done = done;
+			this.todo = todo;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			int c = Long.compare(this.due, o.due);
+			if (c == 0) {
+				c = this.uuid.compareTo(o.uuid);
+			}
+			return c != 0 ? c : Long.compare(this.sequence, o.sequence);
+		}
+	}
+
+	private final User user;
+	private final TreeSet<Entry> open = new TreeSet<>();
+	private final TreeSet<Entry> done = new TreeSet<>();
+	private final Map<Todo, Entry> entries = new IdentityHashMap<>();
+	private long sequence = 0;
+	private Runnable onChanged = null;
+
+	/**
+	 * Instantiates a new DueDateIndex of the loaded TodoLists of a user.
+	 *
+	 * @param user the user
+	 */
+	DueDateIndex(User user) {
+		this.user = user;
+		for (TodoList list : user.getTodoLists()) {
+			for (Todo todo : list.getTodos()) {
+				this.update(todo);
+			}
+		}
+		user.addModelListener(this);
+	}
+
+	/**
+	 * Stop following the changes of the user
+	 */
+	void close() {
+		this.user.removeModelListener(this);
+	}
+
+	/**
+	 * Sets on changed.
+	 *
+	 * @param onChanged gets called after items were added to or removed from the index
+	 */
+	void setOnChanged(Runnable onChanged) {
+		this.onChanged = onChanged;
+	}
+
+	/**
+	 * Add, move or remove the entry of an item
+	 *
+	 * @param todo the item
+	 * @return true if the item was added or removed, or its due date or done flag changed
+	 */
+	private boolean update(Todo todo) {
+		Entry old = this.entries.get(todo);
+		Tracked parent = todo.getParent();
+		boolean indexed = todo.hasDueDate() && parent instanceof TodoList && parent.getParent() == this.user;
+		if (old != null && indexed && old.due == todo.getDueDateMillis() && old.done == todo.isDone()) {
+			// the title, the comment or the priority changed
+			return false;
+		}
+		if (old != null) {
+			this.entries.remove(todo);
+			(old.done ? this.done : this.open).remove(old);
+		}
+		if (!indexed) {
+			return old != null;
+		}
+		Entry entry = new Entry(todo.getDueDateMillis(), todo.getUuid(), this.sequence++, todo.isDone(), todo);
+		(entry.done ? this.done : this.open).add(entry);
+		this.entries.put(todo, entry);
+		return true;
+	}
+
+	/**
+	 * Update the entries of an item or of all items of a list
+	 *
+	 * @param object the item or the list
+	 * @param moved  true if the object was added or removed, the agenda shows the list of an item
+	 */
+	private void update(Tracked object, boolean moved) {
+		boolean changed = false;
+		if (object instanceof Todo) {
+			changed = this.update((Todo) object) || moved && ((Todo) object).hasDueDate();
+		} else if (object instanceof TodoList) {
+			for (Todo todo : ((TodoList) object).getTodos()) {
+				changed |= this.update(todo);
+			}
+		}
+		if (changed && this.onChanged != null) {
+			this.onChanged.run();
+		}
+	}
+
+	@Override
+	public void added(Tracked object) {
+		this.update(object, true);
+	}
+
+	@Override
+	public void removed(Tracked object) {
+		// a moved object was already added to its new parent
+		if (object.getParent() == null) {
+			this.update(object, true);
+		}
+	}
+
+	@Override
+	public void changed(Todo todo) {
+		this.update(todo, false);
+	}
+
+	/**
+	 * Get the items due in a range
+	 *
+	 * @param from        the start of the range in milliseconds since the epoch, inclusive
+	 * @param to          the end of the range in milliseconds since the epoch, exclusive
+	 * @param includeDone true to include the done items
+	 * @return the items sorted by due date
+	 */
+	List<Todo> getDue(long from, long to, boolean includeDone) {
+		List<Todo> result = new ArrayList<>();
+		if (from >= to) {
+			return result;
+		}
+		Entry lower = new Entry(from, MIN_UUID, Long.MIN_VALUE, false, null);
+		Entry upper = new Entry(to, MIN_UUID, Long.MIN_VALUE, false, null);
+		Iterator<Entry> a = this.open.subSet(lower, upper).iterator();
+		Iterator<Entry> b = includeDone ? this.done.subSet(lower, upper).iterator() : Collections.emptyIterator();
+		Entry x = a.hasNext() ? a.next() : null;
+		Entry y = b.hasNext() ? b.next() : null;
+		while (x != null || y != null) {
+			if (y == null || (x != null && x.compareTo(y) <= 0)) {
+				result.add(x.todo);
+				x = a.hasNext() ? a.next() : null;
+			} else {
+				result.add(y.todo);
+				y = b.hasNext() ? b.next() : null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the open items past due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the open items with a due date before now, sorted by due date
+	 */
+	List<Todo> getPastDue(long now) {
+		return this.getDue(Long.MIN_VALUE, now, false);
+	}
+
+	/**
+	 * Gets size.
+	 *
+	 * @return the number of items with a due date
+	 */
+	int size() {
+		return this.entries.size();
+	}
+}
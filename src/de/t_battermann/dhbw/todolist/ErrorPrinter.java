@@ -1,37 +1,251 @@
 package de.t_battermann.dhbw.todolist;
 
-import java.text.SimpleDateFormat;
-import java.util.GregorianCalendar;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 /**
  * Print error messages to the console
+ * <p>
+ * Messages below the log level are discarded right away, the level is read from the system property
+ * {@code todolist.loglevel} (debug, info, warn, error or off; default info). Use the {@link Supplier} overloads for
+ * messages that are expensive to build, they are only built if the level is enabled.
+ * <p>
+ * Messages are put into a bounded lock-free ring buffer and written by a background thread, so logging never blocks
+ * the caller. If the buffer is full, messages are dropped and the number of dropped messages is reported later.
+ * Errors and warnings are written to {@code System.err}, everything else to {@code System.out}.
  */
 public class ErrorPrinter {
+	/**
+	 * Log levels, ordered by severity
+	 */
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	private static final int CAPACITY = 1 << 13;
+
+	private static volatile Level level = levelOf(System.getProperty("todolist.loglevel"), Level.INFO);
+	private static final AtomicReferenceArray<Message> buffer = new AtomicReferenceArray<>(CAPACITY);
+	// next sequence number claimed by a producer
+	private static final AtomicLong tail = new AtomicLong();
+	// next sequence number read by the writer, only written by the writer
+	private static volatile long head = 0;
+	private static final AtomicLong dropped = new AtomicLong();
+	// set while the writer is about to park, producers only unpark it then
+	private static volatile boolean parked = false;
+	private static final Thread writer;
+
+	private static class Message {
+		final long time;
+		final String label;
+		final boolean error;
+		final String text;
+
+		Message(long time, String label, boolean error, String text) {
+			this.time = time;
+			this.label = label;
+			this.error = error;
+			this.text = text;
+		}
+	}
+
+	static {
+		writer = new Thread(ErrorPrinter::run, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(ErrorPrinter::flush, "log-flush"));
+	}
+
+	private static Level levelOf(String name, Level defaultLevel) {
+		if (name == null) {
+			return defaultLevel;
+		}
+		try {
+			return Level.valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("[ErrorPrinter] Unknown log level '" + name + "', using " + defaultLevel);
+			return defaultLevel;
+		}
+	}
+
+	/**
+	 * Gets level.
+	 *
+	 * @return the lowest level that is printed
+	 */
+	public static Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets level.
+	 *
+	 * @param level the lowest level that is printed
+	 */
+	public static void setLevel(Level level) {
+		ErrorPrinter.level = level;
+	}
+
+	/**
+	 * Check whether messages of a level are printed
+	 *
+	 * @param level the level
+	 * @return true if the messages are printed
+	 */
+	public static boolean isEnabled(Level level) {
+		return level != Level.OFF && level.compareTo(ErrorPrinter.level) >= 0;
+	}
+
+	/**
+	 * Put a message into the buffer
+	 *
+	 * @param label the label printed in front of the message
+	 * @param error true to print it to System.err
+	 * @param text  the message
+	 */
+	private static void enqueue(String label, boolean error, String text) {
+		Message message = new Message(System.currentTimeMillis(), label, error, text);
+		long seq;
+		do {
+			seq = tail.get();
+			if (seq - head >= CAPACITY) {
+				dropped.incrementAndGet();
+				return;
+			}
+		} while (!tail.compareAndSet(seq, seq + 1));
+		// the slot was cleared before head moved past it
+		buffer.set((int) seq & (CAPACITY - 1), message);
+		if (parked) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * Write the buffered messages
+	 *
+	 * @return true if there was anything to write
+	 */
+	private static synchronized boolean drain() {
+		StringBuilder out = null;
+		StringBuilder err = null;
+		long seq = head;
+		Message message;
+		while ((message = buffer.get((int) seq & (CAPACITY - 1))) != null) {
+			buffer.set((int) seq & (CAPACITY - 1), null);
+			seq++;
+			head = seq;
+			StringBuilder target;
+			if (message.error) {
+				target = err != null ? err : (err = new StringBuilder());
+			} else {
+				target = out != null ? out : (out = new StringBuilder());
+			}
+			target.append('[').append(DateCodec.format(message.time)).append(' ').append(message.label).append("] ")
+					.append(message.text).append(System.lineSeparator());
+		}
+		long lost = dropped.getAndSet(0);
+		if (lost > 0) {
+			if (err == null) {
+				err = new StringBuilder();
+			}
+			err.append('[').append(DateCodec.format(System.currentTimeMillis())).append(" warn] ErrorPrinter > Dropped ")
+					.append(lost).append(" messages").append(System.lineSeparator());
+		}
+		write(System.out, out);
+		write(System.err, err);
+		return out != null || err != null;
+	}
+
+	private static void write(PrintStream stream, StringBuilder text) {
+		if (text != null) {
+			stream.print(text);
+			stream.flush();
+		}
+	}
+
+	/**
+	 * Main loop of the writer thread
+	 */
+	private static void run() {
+		while (true) {
+			if (!drain()) {
+				parked = true;
+				// a message put before parked was set is seen here, a later one unparks the writer
+				if (buffer.get((int) head & (CAPACITY - 1)) == null) {
+					LockSupport.park();
+				}
+				parked = false;
+			}
+		}
+	}
+
+	/**
+	 * Write all buffered messages, blocks until they are written.
+	 */
+	public static void flush() {
+		drain();
+	}
+
 	public static void printError(String p, String s) {
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
-		System.err.println("[" + format.format(GregorianCalendar.getInstance().getTime()) + " " + p + "] " + s);
+		if (isEnabled(Level.ERROR)) {
+			enqueue(p, true, s);
+		}
 	}
 
 	public static void printInfo(String p, String s) {
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
-		System.out.println("[" + format.format(GregorianCalendar.getInstance().getTime()) + " " + p + "] " + s);
+		if (isEnabled(Level.INFO)) {
+			enqueue(p, false, s);
+		}
 	}
 
 	public static void printInfo(String s) {
-		ErrorPrinter.printInfo("info", s);
+		if (isEnabled(Level.INFO)) {
+			enqueue("info", false, s);
+		}
+	}
+
+	public static void printInfo(Supplier<String> s) {
+		if (isEnabled(Level.INFO)) {
+			enqueue("info", false, s.get());
+		}
 	}
 
 	public static void printError(String s) {
-		ErrorPrinter.printError("error", s);
+		if (isEnabled(Level.ERROR)) {
+			enqueue("error", true, s);
+		}
+	}
+
+	public static void printError(Supplier<String> s) {
+		if (isEnabled(Level.ERROR)) {
+			enqueue("error", true, s.get());
+		}
 	}
 
 	public static void printDebug(String s) {
-		ErrorPrinter.printInfo("debug", s);
+		if (isEnabled(Level.DEBUG)) {
+			enqueue("debug", false, s);
+		}
+	}
+
+	public static void printDebug(Supplier<String> s) {
+		if (isEnabled(Level.DEBUG)) {
+			enqueue("debug", false, s.get());
+		}
 	}
 
 	public static void printWarning(String s) {
-		ErrorPrinter.printError("warn", s);
+		if (isEnabled(Level.WARN)) {
+			enqueue("warn", true, s);
+		}
+	}
+
+	public static void printWarning(Supplier<String> s) {
+		if (isEnabled(Level.WARN)) {
+			enqueue("warn", true, s.get());
+		}
 	}
 }
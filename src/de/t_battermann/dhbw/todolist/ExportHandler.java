@@ -1,13 +1,69 @@
 package de.t_battermann.dhbw.todolist;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 
 /**
  * Interface for exporting/saving the data
  */
 public interface ExportHandler {
+	/**
+	 * Receives the progress of an import
+	 */
+	interface Progress {
+		/**
+		 * Report the progress.
+		 *
+		 * @param bytes   the number of bytes read so far
+		 * @param records the number of users, TodoLists and items read so far
+		 */
+		void update(long bytes, long records);
+	}
+
+	/**
+	 * Writes the exported data
+	 */
+	interface Content {
+		/**
+		 * Write the data.
+		 *
+		 * @param stream the stream to write to
+		 * @throws IOException if writing fails
+		 */
+		void write(OutputStream stream) throws IOException;
+	}
+
+	/**
+	 * Write a file through a temporary file.
+	 * <p>
+	 * The data is written to a temporary file and synced to the disk, then the temporary file replaces the target. If
+	 * writing fails or the program is killed meanwhile, the old file stays as it is.
+	 *
+	 * @param file    the file
+	 * @param content writes the data
+	 * @throws IOException if the file can’t be written
+	 */
+	static void writeFile(File file, Content content) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			OutputStream stream = new BufferedOutputStream(out, 1 << 16);
+			content.write(stream);
+			stream.flush();
+			out.getFD().sync();
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
 	/**
 	 * Export to file.
 	 *
@@ -32,6 +88,22 @@ public interface ExportHandler {
 	 */
 	Map<String, User> importFromFile(File filename) throws IOException, InvalidDataException;
 
+	/**
+	 * Import from file and report the progress.
+	 * <p>
+	 * The progress is reported now and then while the file is read, an unchecked exception thrown by it aborts the
+	 * import. This implementation only reports the end of the import.
+	 *
+	 * @param filename Path to the saved data
+	 * @param progress receives the progress
+	 * @return A Map containing the Users, username as index
+	 */
+	default Map<String, User> importFromFile(File filename, Progress progress) throws IOException, InvalidDataException {
+		Map<String, User> users = this.importFromFile(filename);
+		progress.update(filename.length(), users.size());
+		return users;
+	}
+
 	/**
 	 * Import from string.
 	 *
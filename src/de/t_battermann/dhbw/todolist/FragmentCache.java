@@ -0,0 +1,127 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Serialized data of users and TodoLists from the previous export, keyed by uuid and revision.
+ * <p>
+ * An export looks up every object, unchanged objects (same revision) are copied instead of being encoded again.
+ * Only the entries used by the last successful export are kept, so deleted objects don’t stay in memory. The entries
+ * of the children (TodoLists) of a copied user are kept, too.
+ *
+ * @param <T> the type of the serialized data
+ */
+final class FragmentCache<T> {
+	private Map<UUID, Entry<T>> entries = new HashMap<>();
+	private Map<UUID, Entry<T>> used = new HashMap<>();
+	private int hits = 0;
+	private int misses = 0;
+
+	private static class Entry<T> {
+		final long revision;
+		final T data;
+		final List<UUID> children;
+
+		Entry(long revision, T data, List<UUID> children) {
+			this.revision = revision;
+			this.data = data;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * Start a new export
+	 */
+	void begin() {
+		this.used = new HashMap<>();
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Get the data of a unchanged object
+	 *
+	 * @param uuid     the uuid of the object
+	 * @param revision the current revision of the object
+	 * @return the data or null if the object changed since it was stored
+	 */
+	T get(UUID uuid, long revision) {
+		Entry<T> entry = this.entries.get(uuid);
+		if (entry == null || entry.revision != revision) {
+			this.misses++;
+			return null;
+		}
+		this.keep(uuid, entry);
+		this.hits++;
+		return entry.data;
+	}
+
+	/**
+	 * Keep a entry and the entries of its children for the next export
+	 *
+	 * @param uuid  the uuid of the object
+	 * @param entry the entry
+	 */
+	private void keep(UUID uuid, Entry<T> entry) {
+		this.used.put(uuid, entry);
+		for (UUID child : entry.children) {
+			Entry<T> c = this.entries.get(child);
+			if (c != null) {
+				this.keep(child, c);
+			}
+		}
+	}
+
+	/**
+	 * Store the data of a object
+	 *
+	 * @param uuid     the uuid of the object
+	 * @param revision the revision the data belongs to
+	 * @param data     the data
+	 */
+	void put(UUID uuid, long revision, T data) {
+		this.put(uuid, revision, data, Collections.emptyList());
+	}
+
+	/**
+	 * Store the data of a object containing other cached objects
+	 *
+	 * @param uuid     the uuid of the object
+	 * @param revision the revision the data belongs to
+	 * @param data     the data
+	 * @param children the uuids of the contained objects
+	 */
+	void put(UUID uuid, long revision, T data, List<UUID> children) {
+		this.used.put(uuid, new Entry<>(revision, data, children));
+	}
+
+	/**
+	 * The export succeeded, keep the used entries only
+	 */
+	void commit() {
+		this.entries = this.used;
+		this.used = new HashMap<>();
+	}
+
+	/**
+	 * Gets hits.
+	 *
+	 * @return the number of objects copied by the current export
+	 */
+	int getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Gets misses.
+	 *
+	 * @return the number of objects encoded by the current export
+	 */
+	int getMisses() {
+		return this.misses;
+	}
+}
@@ -0,0 +1,71 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream and the records imported from it, and reports them to an
+ * {@link ExportHandler.Progress} every few thousand records.
+ */
+final class ImportCounter extends FilterInputStream {
+	private static final int INTERVAL = 1 << 12;
+
+	private final ExportHandler.Progress progress;
+	private long bytes = 0;
+	private long records = 0;
+
+	/**
+	 * Instantiates a new ImportCounter.
+	 *
+	 * @param in       the stream the data is read from
+	 * @param progress receives the progress, may be null
+	 */
+	ImportCounter(InputStream in, ExportHandler.Progress progress) {
+		super(in);
+		this.progress = progress;
+	}
+
+	/**
+	 * Count a user, TodoList or item
+	 */
+	void record() {
+		if (++this.records % INTERVAL == 0) {
+			this.report();
+		}
+	}
+
+	/**
+	 * Report the current counts
+	 */
+	void report() {
+		if (this.progress != null) {
+			this.progress.update(this.bytes, this.records);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			this.bytes++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			this.bytes += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		this.bytes += skipped;
+		return skipped;
+	}
+}
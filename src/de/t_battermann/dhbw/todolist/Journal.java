@@ -0,0 +1,729 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Append-only journal of the changes made since the last snapshot was written.
+ * <p>
+ * Every change is appended as a small record right away, so saving only has to sync the journal instead of rewriting
+ * the whole database. The journal is stored next to the snapshot ("snapshot.journal") and replayed over the snapshot
+ * when it is loaded. When a new snapshot is taken the journal is rotated ("snapshot.journal.old"), the rotated journal
+ * is deleted once the snapshot was written (see {@link AutoSaver}).
+ * <p>
+ * All records are idempotent, replaying a journal that already is contained in the snapshot doesn’t change anything.
+ * <p>
+ * File format (see {@link BinaryCodec} for the primitives):
+ * MAGIC,version,RECORD*
+ * RECORD: type,uuid of the user,data depending on the type (see the methods writing them)
+ */
+public class Journal {
+	private static final int MAGIC = 0x54444c4a; // "TDLJ"
+	private static final byte VERSION = 1;
+
+	private static final byte USER_CREATED = 1;
+	private static final byte EMAIL_CHANGED = 2;
+	private static final byte PASSWORD_CHANGED = 3;
+	private static final byte LIST_CREATED = 4;
+	private static final byte LIST_RENAMED = 5;
+	private static final byte LIST_DELETED = 6;
+	private static final byte TODO_CREATED = 7;
+	private static final byte TODO_UPDATED = 8;
+	private static final byte TODO_FLAGS = 9;
+	private static final byte TODO_MOVED = 10;
+	private static final byte TODO_DELETED = 11;
+
+	private static final int LIST_CHANGEABLE = 0x01;
+	private static final int TODO_DONE = 0x01;
+	private static final int TODO_PRIO = 0x02;
+	private static final int TODO_DUE_DATE = 0x04;
+
+	private final File snapshot;
+	private final File file;
+	private final File rotated;
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(buffer);
+	private FileOutputStream out;
+	private long size;
+	private boolean healthy = true;
+
+	/**
+	 * Instantiates a new Journal.
+	 *
+	 * @param snapshot the snapshot the journal belongs to
+	 * @param truncate discard existing records, the snapshot contains all the data
+	 * @throws IOException
+	 */
+	private Journal(File snapshot, boolean truncate) throws IOException {
+		this.snapshot = snapshot;
+		this.file = journalFile(snapshot);
+		this.rotated = rotatedFile(snapshot);
+		if (truncate) {
+			Files.deleteIfExists(this.rotated.toPath());
+		}
+		this.openFile(truncate || !this.file.isFile() || this.file.length() == 0);
+	}
+
+	/**
+	 * Open the journal of a snapshot, existing records are kept.
+	 *
+	 * @param snapshot the snapshot the journal belongs to
+	 * @return the journal
+	 * @throws IOException
+	 */
+	public static Journal open(File snapshot) throws IOException {
+		return new Journal(snapshot, false);
+	}
+
+	/**
+	 * Start a empty journal for a snapshot that was just written.
+	 *
+	 * @param snapshot the snapshot the journal belongs to
+	 * @return the journal
+	 * @throws IOException
+	 */
+	public static Journal create(File snapshot) throws IOException {
+		return new Journal(snapshot, true);
+	}
+
+	private static File journalFile(File snapshot) {
+		return new File(snapshot.getPath() + ".journal");
+	}
+
+	private static File rotatedFile(File snapshot) {
+		return new File(snapshot.getPath() + ".journal.old");
+	}
+
+	/**
+	 * Open the journal file for appending
+	 *
+	 * @param empty start a new file
+	 * @throws IOException
+	 */
+	private void openFile(boolean empty) throws IOException {
+		this.out = new FileOutputStream(this.file, !empty);
+		if (empty) {
+			DataOutputStream header = new DataOutputStream(this.out);
+			header.writeInt(MAGIC);
+			header.writeByte(VERSION);
+			header.flush();
+		}
+		this.size = this.file.length();
+	}
+
+	/**
+	 * Gets the snapshot.
+	 *
+	 * @return the snapshot the journal belongs to
+	 */
+	public File getSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Is healthy.
+	 *
+	 * @return false if a record couldn’t be written, the journal is incomplete and the snapshot has to be rewritten
+	 */
+	public boolean isHealthy() {
+		return this.healthy;
+	}
+
+	/**
+	 * Gets size.
+	 *
+	 * @return the size of the journal file in bytes
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Force the written records to the disk.
+	 * May be called from another thread, as long as the journal isn’t rotated meanwhile.
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		this.out.getFD().sync();
+	}
+
+	/**
+	 * A snapshot containing all the recorded changes is taken, start a new journal.
+	 * <p>
+	 * If a rotated journal is left over from a snapshot that couldn’t be written, the records are kept in the current
+	 * journal. Replaying records that are already contained in a snapshot doesn’t change anything.
+	 */
+	public void rotate() {
+		if (this.rotated.exists()) {
+			return;
+		}
+		try {
+			this.out.close();
+			Files.move(this.file.toPath(), this.rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			this.openFile(true);
+		} catch (IOException e) {
+			this.fail("rotate", e);
+		}
+	}
+
+	/**
+	 * The snapshot was written, the rotated journal isn’t needed anymore.
+	 */
+	public void snapshotWritten() {
+		try {
+			Files.deleteIfExists(this.rotated.toPath());
+		} catch (IOException e) {
+			ErrorPrinter.printWarning("Journal.snapshotWritten > Couldn’t delete '" + this.rotated + "': " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Close the journal.
+	 */
+	public void close() {
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A user was created, the TodoLists of the user are recorded, too.
+	 *
+	 * @param user the user
+	 */
+	public void userCreated(User user) {
+		try {
+			this.begin(USER_CREATED, user);
+			BinaryCodec.writeString(this.record, user.getUsername());
+			BinaryCodec.writeString(this.record, user.getPassword());
+			BinaryCodec.writeString(this.record, user.getEmail());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("userCreated", e);
+		}
+		for (TodoList list : user.getTodoLists()) {
+			this.listCreated(user, list);
+		}
+	}
+
+	/**
+	 * The eMail address of a user was changed.
+	 *
+	 * @param user the user
+	 */
+	public void emailChanged(User user) {
+		try {
+			this.begin(EMAIL_CHANGED, user);
+			BinaryCodec.writeString(this.record, user.getEmail());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("emailChanged", e);
+		}
+	}
+
+	/**
+	 * The password of a user was changed.
+	 *
+	 * @param user the user
+	 */
+	public void passwordChanged(User user) {
+		try {
+			this.begin(PASSWORD_CHANGED, user);
+			BinaryCodec.writeString(this.record, user.getPassword());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("passwordChanged", e);
+		}
+	}
+
+	/**
+	 * A TodoList was created, its items are recorded, too.
+	 *
+	 * @param user the owner of the list
+	 * @param list the list
+	 */
+	public void listCreated(User user, TodoList list) {
+		try {
+			this.begin(LIST_CREATED, user);
+			BinaryCodec.writeUuid(this.record, list.getUuid());
+			BinaryCodec.writeString(this.record, list.getName());
+			this.record.writeByte(list.isChangeable() ? LIST_CHANGEABLE : 0);
+			this.commit();
+		} catch (IOException e) {
+			this.fail("listCreated", e);
+		}
+		for (Todo todo : list.getTodos()) {
+			this.todoCreated(user, list, todo);
+		}
+	}
+
+	/**
+	 * A TodoList was renamed.
+	 *
+	 * @param user the owner of the list
+	 * @param list the list
+	 */
+	public void listRenamed(User user, TodoList list) {
+		try {
+			this.begin(LIST_RENAMED, user);
+			BinaryCodec.writeUuid(this.record, list.getUuid());
+			BinaryCodec.writeString(this.record, list.getName());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("listRenamed", e);
+		}
+	}
+
+	/**
+	 * A TodoList was deleted.
+	 *
+	 * @param user the owner of the list
+	 * @param list the list
+	 */
+	public void listDeleted(User user, TodoList list) {
+		try {
+			this.begin(LIST_DELETED, user);
+			BinaryCodec.writeUuid(this.record, list.getUuid());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("listDeleted", e);
+		}
+	}
+
+	/**
+	 * A todo item was created.
+	 *
+	 * @param user the owner of the list
+	 * @param list the list containing the item
+	 * @param todo the item
+	 */
+	public void todoCreated(User user, TodoList list, Todo todo) {
+		try {
+			this.begin(TODO_CREATED, user);
+			BinaryCodec.writeUuid(this.record, list.getUuid());
+			BinaryCodec.writeUuid(this.record, todo.getUuid());
+			this.writeTodo(todo);
+			this.commit();
+		} catch (IOException e) {
+			this.fail("todoCreated", e);
+		}
+	}
+
+	/**
+	 * A todo item was changed.
+	 *
+	 * @param user the owner of the item
+	 * @param todo the item
+	 */
+	public void todoUpdated(User user, Todo todo) {
+		try {
+			this.begin(TODO_UPDATED, user);
+			BinaryCodec.writeUuid(this.record, todo.getUuid());
+			this.writeTodo(todo);
+			this.commit();
+		} catch (IOException e) {
+			this.fail("todoUpdated", e);
+		}
+	}
+
+	/**
+	 * The done or prio flag of a todo item was changed.
+	 *
+	 * @param user the owner of the item
+	 * @param todo the item
+	 */
+	public void todoFlagsChanged(User user, Todo todo) {
+		try {
+			this.begin(TODO_FLAGS, user);
+			BinaryCodec.writeUuid(this.record, todo.getUuid());
+			this.record.writeByte((todo.isDone() ? TODO_DONE : 0) | (todo.isPrio() ? TODO_PRIO : 0));
+			this.commit();
+		} catch (IOException e) {
+			this.fail("todoFlagsChanged", e);
+		}
+	}
+
+	/**
+	 * A todo item was moved to another list.
+	 *
+	 * @param user        the owner of the item
+	 * @param todo        the item
+	 * @param destination the list now containing the item
+	 */
+	public void todoMoved(User user, Todo todo, TodoList destination) {
+		try {
+			this.begin(TODO_MOVED, user);
+			BinaryCodec.writeUuid(this.record, todo.getUuid());
+			BinaryCodec.writeUuid(this.record, destination.getUuid());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("todoMoved", e);
+		}
+	}
+
+	/**
+	 * A todo item was deleted.
+	 *
+	 * @param user the owner of the item
+	 * @param todo the item
+	 */
+	public void todoDeleted(User user, Todo todo) {
+		try {
+			this.begin(TODO_DELETED, user);
+			BinaryCodec.writeUuid(this.record, todo.getUuid());
+			this.commit();
+		} catch (IOException e) {
+			this.fail("todoDeleted", e);
+		}
+	}
+
+	/**
+	 * Write the data of a todo item: title,comment,flags,[dueDate as epoch millis]
+	 *
+	 * @param todo the item
+	 * @throws IOException
+	 */
+	private void writeTodo(Todo todo) throws IOException {
+		BinaryCodec.writeString(this.record, todo.getTitle());
+		BinaryCodec.writeString(this.record, todo.getComment());
+		int flags = (todo.isDone() ? TODO_DONE : 0) | (todo.isPrio() ? TODO_PRIO : 0);
+		if (todo.hasDueDate()) {
+			this.record.writeByte(flags | TODO_DUE_DATE);
+			this.record.writeLong(todo.getDueDateMillis());
+		} else {
+			this.record.writeByte(flags);
+		}
+	}
+
+	/**
+	 * Start a new record
+	 *
+	 * @param type the type of the record
+	 * @param user the user the record belongs to
+	 * @throws IOException
+	 */
+	private void begin(byte type, User user) throws IOException {
+		this.buffer.reset();
+		this.record.writeByte(type);
+		BinaryCodec.writeUuid(this.record, user.getUuid());
+	}
+
+	/**
+	 * Append the record with a single write
+	 *
+	 * @throws IOException
+	 */
+	private void commit() throws IOException {
+		if (!this.healthy) {
+			return;
+		}
+		this.buffer.writeTo(this.out);
+		this.size += this.buffer.size();
+	}
+
+	/**
+	 * Mark the journal as incomplete
+	 *
+	 * @param method the method that failed
+	 * @param e      the cause
+	 */
+	private void fail(String method, IOException e) {
+		this.healthy = false;
+		ErrorPrinter.printError("Journal." + method + " > Couldn’t write to '" + this.file + "': " + e.getMessage());
+	}
+
+	/**
+	 * Replay the journal of a snapshot (including a rotated one whose snapshot wasn’t written)
+	 *
+	 * @param snapshot the snapshot the users were loaded from
+	 * @param users    the users loaded from the snapshot, changed in place
+	 * @return the number of records replayed
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	public static int replay(File snapshot, Map<String, User> users) throws IOException, InvalidDataException {
+		return replay(snapshot, users, new UuidIndex(users));
+	}
+
+	/**
+	 * Replay the journal of a snapshot (including a rotated one whose snapshot wasn’t written)
+	 *
+	 * @param snapshot the snapshot the users were loaded from
+	 * @param users    the users loaded from the snapshot, changed in place
+	 * @param index    the index of the users, new users are added to it
+	 * @return the number of records replayed
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	static int replay(File snapshot, Map<String, User> users, UuidIndex index) throws IOException, InvalidDataException {
+		int records = 0;
+		if (rotatedFile(snapshot).isFile()) {
+			records += replayFile(rotatedFile(snapshot), users, index);
+		}
+		if (journalFile(snapshot).isFile()) {
+			records += replayFile(journalFile(snapshot), users, index);
+		}
+		return records;
+	}
+
+	/**
+	 * Replay a journal file
+	 *
+	 * @param journal the journal
+	 * @param users   the users, changed in place
+	 * @param index   the index of the users
+	 * @return the number of records replayed
+	 * @throws IOException
+	 * @throws InvalidDataException if a record before the end of the journal is invalid, a torn last record is ignored
+	 */
+	private static int replayFile(File journal, Map<String, User> users, UuidIndex index) throws IOException, InvalidDataException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+		if (in.remaining() == 0) {
+			return 0;
+		}
+		try {
+			if (in.getInt() != MAGIC || in.get() != VERSION) {
+				throw new InvalidDataException("Not a TodoList journal: " + journal);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new InvalidDataException("Not a TodoList journal: " + journal);
+		}
+		Replay replay = new Replay(users, index);
+		int records = 0;
+		while (in.hasRemaining()) {
+			int start = in.position();
+			try {
+				replay.apply(in);
+				records++;
+			} catch (BufferUnderflowException e) {
+				// the record reaches the end of the file: the last record, torn by a crash while it was appended
+				ErrorPrinter.printWarning("Journal.replay > Ignoring incomplete record at offset " + start + " of '" + journal + "'");
+				break;
+			} catch (InvalidDataException e) {
+				if (!isZero(in, start)) {
+					// the changes after the record would be lost silently
+					throw new InvalidDataException("Invalid record at offset " + start + " of '" + journal + "': " + e.getMessage());
+				}
+				// the file was extended by a crash, but the record wasn’t written
+				ErrorPrinter.printWarning("Journal.replay > Ignoring empty record at offset " + start + " of '" + journal + "'");
+				break;
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Are all bytes from a position to the end of a buffer zero?
+	 *
+	 * @param in    the buffer
+	 * @param start the position
+	 * @return true if they are
+	 */
+	private static boolean isZero(ByteBuffer in, int start) {
+		for (int i = start; i < in.limit(); i++) {
+			if (in.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies records to the users, finds the objects by their uuids
+	 */
+	private static class Replay {
+		private final Map<String, User> users;
+		private final UuidIndex index;
+
+		Replay(Map<String, User> users, UuidIndex index) {
+			this.users = users;
+			this.index = index;
+		}
+
+		/**
+		 * Get a user by its uuid, the lists and items of the user are loaded (and indexed) on first access
+		 *
+		 * @param uuid the uuid
+		 * @return the user or null
+		 */
+		private User user(UUID uuid) {
+			User user = this.index.getUser(uuid);
+			if (user != null) {
+				user.getTodoLists();
+			}
+			return user;
+		}
+
+		private void moveTodo(Todo todo, TodoList destination) {
+			Tracked source = todo.getParent();
+			if (source != destination) {
+				destination.addTodo(todo);
+				if (source instanceof TodoList) {
+					((TodoList) source).deleteTodo(todo);
+				}
+			}
+		}
+
+		private long readDueDate(ByteBuffer in, int flags) {
+			return (flags & TODO_DUE_DATE) != 0 ? in.getLong() : Todo.NO_DUE_DATE;
+		}
+
+		/**
+		 * Read one record and apply it
+		 *
+		 * @param in the buffer positioned at the start of the record
+		 * @throws InvalidDataException
+		 */
+		void apply(ByteBuffer in) throws InvalidDataException {
+			byte type = in.get();
+			UUID userUuid = BinaryCodec.readUuid(in);
+			switch (type) {
+				case USER_CREATED: {
+					String username = BinaryCodec.readString(in);
+					String password = BinaryCodec.readString(in);
+					String email = BinaryCodec.readString(in);
+					User user = this.user(userUuid);
+					if (user == null) {
+						user = new User(userUuid, username, password, email);
+						this.users.put(username, user);
+						this.index.addUser(user);
+					} else {
+						user.setHashedPassword(password);
+						user.setEmail(email);
+					}
+					break;
+				}
+				case EMAIL_CHANGED: {
+					String email = BinaryCodec.readString(in);
+					User user = this.user(userUuid);
+					if (user != null) {
+						user.setEmail(email);
+					}
+					break;
+				}
+				case PASSWORD_CHANGED: {
+					String password = BinaryCodec.readString(in);
+					User user = this.user(userUuid);
+					if (user != null) {
+						user.setHashedPassword(password);
+					}
+					break;
+				}
+				case LIST_CREATED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					String name = BinaryCodec.readString(in);
+					boolean changeable = (in.get() & LIST_CHANGEABLE) != 0;
+					User user = this.user(userUuid);
+					if (user == null) {
+						break;
+					}
+					TodoList list = this.index.getTodoList(uuid);
+					if (list != null) {
+						list.setName(name);
+					} else {
+						list = new TodoList(uuid, name, changeable);
+						if (!user.addTodoList(list)) {
+							ErrorPrinter.printWarning("Journal.replay > Couldn’t restore TodoList '" + name + "'");
+						}
+					}
+					break;
+				}
+				case LIST_RENAMED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					String name = BinaryCodec.readString(in);
+					TodoList list = this.user(userUuid) != null ? this.index.getTodoList(uuid) : null;
+					if (list != null) {
+						list.setName(name);
+					}
+					break;
+				}
+				case LIST_DELETED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					User user = this.user(userUuid);
+					TodoList list = user != null ? this.index.getTodoList(uuid) : null;
+					if (list != null) {
+						user.getTodoLists().remove(list);
+					}
+					break;
+				}
+				case TODO_CREATED: {
+					UUID listUuid = BinaryCodec.readUuid(in);
+					UUID uuid = BinaryCodec.readUuid(in);
+					String title = BinaryCodec.readString(in);
+					String comment = BinaryCodec.readString(in);
+					int flags = in.get();
+					long dueDate = this.readDueDate(in, flags);
+					TodoList list = this.user(userUuid) != null ? this.index.getTodoList(listUuid) : null;
+					if (list == null) {
+						break;
+					}
+					Todo todo = this.index.getTodo(uuid);
+					if (todo == null) {
+						todo = new Todo(uuid, title, comment, dueDate, (flags & TODO_DONE) != 0, (flags & TODO_PRIO) != 0);
+					} else {
+						todo.setTitle(title);
+						todo.setComment(comment);
+						todo.setDueDateMillis(dueDate);
+						todo.setDone((flags & TODO_DONE) != 0);
+						todo.setPrio((flags & TODO_PRIO) != 0);
+					}
+					this.moveTodo(todo, list);
+					break;
+				}
+				case TODO_UPDATED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					String title = BinaryCodec.readString(in);
+					String comment = BinaryCodec.readString(in);
+					int flags = in.get();
+					long dueDate = this.readDueDate(in, flags);
+					Todo todo = this.user(userUuid) != null ? this.index.getTodo(uuid) : null;
+					if (todo != null) {
+						todo.setTitle(title);
+						todo.setComment(comment);
+						todo.setDueDateMillis(dueDate);
+						todo.setDone((flags & TODO_DONE) != 0);
+						todo.setPrio((flags & TODO_PRIO) != 0);
+					}
+					break;
+				}
+				case TODO_FLAGS: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					int flags = in.get();
+					Todo todo = this.user(userUuid) != null ? this.index.getTodo(uuid) : null;
+					if (todo != null) {
+						todo.setDone((flags & TODO_DONE) != 0);
+						todo.setPrio((flags & TODO_PRIO) != 0);
+					}
+					break;
+				}
+				case TODO_MOVED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					UUID listUuid = BinaryCodec.readUuid(in);
+					Todo todo = this.user(userUuid) != null ? this.index.getTodo(uuid) : null;
+					TodoList list = this.index.getTodoList(listUuid);
+					if (todo != null && list != null) {
+						this.moveTodo(todo, list);
+					}
+					break;
+				}
+				case TODO_DELETED: {
+					UUID uuid = BinaryCodec.readUuid(in);
+					Todo todo = this.user(userUuid) != null ? this.index.getTodo(uuid) : null;
+					if (todo != null && todo.getParent() instanceof TodoList) {
+						((TodoList) todo.getParent()).deleteTodo(todo);
+					}
+					break;
+				}
+				default:
+					throw new InvalidDataException("Invalid journal record type " + type);
+			}
+		}
+	}
+}
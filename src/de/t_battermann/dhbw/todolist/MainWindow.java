@@ -0,0 +1,111 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+
+import java.io.IOException;
+
+/**
+ * The elements of the main window ('main.fxml'), looked up once when the scene is loaded.
+ * <p>
+ * A lookup walks the whole scene graph, so the Controller uses these references instead of looking up the elements
+ * for every action.
+ */
+final class MainWindow {
+	final Button menuSave;
+	final Button menuSaveAs;
+	final Button menuChangePassword;
+	final Button menuChangeEmail;
+	final Button menuLogout;
+	final Button menuClose;
+	final ListView<TodoList> todoLists;
+	final ToolBar todoListToolBar;
+	final TextField todoListNewName;
+	final Button todoListNewNameSave;
+	final Button todoListNew;
+	final Button todoListDelete;
+	final Button todoListEdit;
+	final ChoiceBox<DueDateIndex.Agenda> agendaRange;
+	final TextField search;
+	final ListView<Todo> agenda;
+	final Button todoNew;
+	final ToggleButton todoToggleDone;
+	final ToggleButton todoToggleStar;
+	final Button todoMove;
+	final Button todoDelete;
+	final ToggleButton todosShowDone;
+	final ToggleButton todosPastDue;
+	final ChoiceBox<TodoView.Sort> todosSort;
+	final ListView<Todo> todos;
+	final TextField todoDetailTitle;
+	final TextArea todoDetailDescription;
+	final CheckBox todoDetailDueDate;
+	final DatePicker todoDetailDate;
+	final TextField todoDetailTime;
+	final Button todoDetailSave;
+	final Label statusLine;
+
+	/**
+	 * Look up the elements of the main window
+	 *
+	 * @param scene the scene loaded from 'main.fxml'
+	 * @throws IOException if a element is missing or has another type
+	 */
+	@SuppressWarnings("unchecked")
+	MainWindow(Scene scene) throws IOException {
+		this.menuSave = lookup(scene, "menuSave", Button.class);
+		this.menuSaveAs = lookup(scene, "menuSaveAs", Button.class);
+		this.menuChangePassword = lookup(scene, "menuChangePassword", Button.class);
+		this.menuChangeEmail = lookup(scene, "menuChangeEmail", Button.class);
+		this.menuLogout = lookup(scene, "menuLogout", Button.class);
+		this.menuClose = lookup(scene, "menuClose", Button.class);
+		this.todoLists = lookup(scene, "todoLists", ListView.class);
+		this.todoListToolBar = lookup(scene, "todoListToolBar", ToolBar.class);
+		this.todoListNewName = lookup(scene, "todoListNewName", TextField.class);
+		this.todoListNewNameSave = lookup(scene, "todoListNewNameSave", Button.class);
+		this.todoListNew = lookup(scene, "todoListNew", Button.class);
+		this.todoListDelete = lookup(scene, "todoListDelete", Button.class);
+		this.todoListEdit = lookup(scene, "todoListEdit", Button.class);
+		this.agendaRange = lookup(scene, "agendaRange", ChoiceBox.class);
+		this.search = lookup(scene, "search", TextField.class);
+		this.agenda = lookup(scene, "agenda", ListView.class);
+		this.todoNew = lookup(scene, "todoNew", Button.class);
+		this.todoToggleDone = lookup(scene, "todoToggleDone", ToggleButton.class);
+		this.todoToggleStar = lookup(scene, "todoToggleStar", ToggleButton.class);
+		this.todoMove = lookup(scene, "todoMove", Button.class);
+		this.todoDelete = lookup(scene, "todoDelete", Button.class);
+		this.todosShowDone = lookup(scene, "todosShowDone", ToggleButton.class);
+		this.todosPastDue = lookup(scene, "todosPastDue", ToggleButton.class);
+		this.todosSort = lookup(scene, "todosSort", ChoiceBox.class);
+		this.todos = lookup(scene, "todos", ListView.class);
+		this.todoDetailTitle = lookup(scene, "todoDetailTitle", TextField.class);
+		this.todoDetailDescription = lookup(scene, "todoDetailDescription", TextArea.class);
+		this.todoDetailDueDate = lookup(scene, "todoDetailDueDate", CheckBox.class);
+		this.todoDetailDate = lookup(scene, "todoDetailDate", DatePicker.class);
+		this.todoDetailTime = lookup(scene, "todoDetailTime", TextField.class);
+		this.todoDetailSave = lookup(scene, "todoDetailSave", Button.class);
+		this.statusLine = lookup(scene, "statusLine", Label.class);
+	}
+
+	/**
+	 * Look up a element
+	 *
+	 * @param scene the scene
+	 * @param id    the id of the element
+	 * @param type  the expected type
+	 * @param <T>   the expected type
+	 * @return the element
+	 * @throws IOException if the element is missing or has another type
+	 */
+	private static <T extends Node> T lookup(Scene scene, String id, Class<T> type) throws IOException {
+		Node n = scene.lookup("#" + id);
+		if (n == null) {
+			throw new IOException("Couldn’t find element '#" + id + "'");
+		}
+		if (!type.isInstance(n)) {
+			throw new IOException("Element '#" + id + "' is a " + n.getClass().getSimpleName() + ", expected a " + type.getSimpleName());
+		}
+		return type.cast(n);
+	}
+}
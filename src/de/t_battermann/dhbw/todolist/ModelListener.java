@@ -0,0 +1,61 @@
+package de.t_battermann.dhbw.todolist;
+
+/**
+ * Gets notified when TodoLists or items are added to or removed from a user, or when an item changes.
+ */
+interface ModelListener {
+	/**
+	 * Combine listeners
+	 *
+	 * @param listeners the listeners
+	 * @return a listener notifying all of them, or null if there are none
+	 */
+	static ModelListener all(ModelListener... listeners) {
+		if (listeners.length <= 1) {
+			return listeners.length == 1 ? listeners[0] : null;
+		}
+		return new ModelListener() {
+			@Override
+			public void added(Tracked object) {
+				for (ModelListener listener : listeners) {
+					listener.added(object);
+				}
+			}
+
+			@Override
+			public void removed(Tracked object) {
+				for (ModelListener listener : listeners) {
+					listener.removed(object);
+				}
+			}
+
+			@Override
+			public void changed(Todo todo) {
+				for (ModelListener listener : listeners) {
+					listener.changed(todo);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A TodoList (including its items) or an item was added
+	 *
+	 * @param object the TodoList or the item
+	 */
+	void added(Tracked object);
+
+	/**
+	 * A TodoList (including its items) or an item was removed
+	 *
+	 * @param object the TodoList or the item
+	 */
+	void removed(Tracked object);
+
+	/**
+	 * The title, the comment, the done flag, the priority or the due date of an item changed
+	 *
+	 * @param todo the item
+	 */
+	void changed(Todo todo);
+}
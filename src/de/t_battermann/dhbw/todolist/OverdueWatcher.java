@@ -0,0 +1,244 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Marks the items of a user that are open and past due, and the TodoLists containing them, as overdue.
+ * <p>
+ * The open items with a due date in the future are kept sorted by their due dates, a single timer fires when the first
+ * of them gets due. Then only the items that got due are marked, nothing is scanned. The watcher is a ModelListener of
+ * the user, so added, removed, moved and changed items are updated right away. The overdue flags of the items and
+ * lists are observable, the views showing them are updated through their extractors. Has to be used on the JavaFX
+ * thread.
+ */
+final class OverdueWatcher implements ModelListener {
+	// the timer is restarted at least once a day, the due dates are compared with the clock anyway
+	private static final long MAX_DELAY = 24 * 60 * 60 * 1000;
+
+	/**
+	 * An item that gets due in the future
+	 */
+	private static class Pending implements Comparable<Pending> {
+		final long due;
+		final long sequence;
+		final Todo todo;
+
+		Pending(long due, long sequence, Todo todo) {
+			this.due = due;
+			this.sequence = sequence;
+			this.todo = todo;
+		}
+
+		@Override
+		public int compareTo(Pending o) {
+			int c = Long.compare(this.due, o.due);
+			return c != 0 ? c : Long.compare(this.sequence, o.sequence);
+		}
+	}
+
+	private final User user;
+	private final TreeSet<Pending> pending = new TreeSet<>();
+	private final Map<Todo, Pending> pendingOf = new IdentityHashMap<>();
+	// the overdue items and the lists they are counted for
+	private final Map<Todo, TodoList> overdue = new IdentityHashMap<>();
+	private final Map<TodoList, Integer> counts = new IdentityHashMap<>();
+	private long sequence = 0;
+	private PauseTransition timer = null;
+	private long scheduled = Long.MIN_VALUE;
+	private Runnable onExpired = null;
+
+	/**
+	 * Instantiates a new OverdueWatcher and marks the overdue items of the user.
+	 *
+	 * @param user the user
+	 */
+	OverdueWatcher(User user) {
+		this.user = user;
+		long now = System.currentTimeMillis();
+		for (TodoList list : user.getTodoLists()) {
+			for (Todo todo : list.getTodos()) {
+				this.update(todo, now);
+			}
+		}
+		user.addModelListener(this);
+	}
+
+	/**
+	 * Start the timer
+	 */
+	void start() {
+		this.timer = new PauseTransition();
+		this.timer.setOnFinished(event -> {
+			this.scheduled = Long.MIN_VALUE;
+			if (this.expire(System.currentTimeMillis()) > 0 && this.onExpired != null) {
+				this.onExpired.run();
+			}
+			this.schedule();
+		});
+		this.schedule();
+	}
+
+	/**
+	 * Sets on expired.
+	 *
+	 * @param onExpired gets called after the timer marked items as overdue
+	 */
+	void setOnExpired(Runnable onExpired) {
+		this.onExpired = onExpired;
+	}
+
+	/**
+	 * Stop the timer and stop watching the user, the flags stay as they are
+	 */
+	void stop() {
+		if (this.timer != null) {
+			this.timer.stop();
+			this.timer = null;
+		}
+		this.user.removeModelListener(this);
+	}
+
+	/**
+	 * Get the list of an item if it belongs to the user
+	 *
+	 * @param todo the item
+	 * @return the list or null
+	 */
+	private TodoList listOf(Todo todo) {
+		Tracked parent = todo.getParent();
+		return parent instanceof TodoList && parent.getParent() == this.user ? (TodoList) parent : null;
+	}
+
+	/**
+	 * Update the overdue flag of an item and its list
+	 *
+	 * @param todo the item
+	 * @param now  milliseconds since the epoch
+	 */
+	private void update(Todo todo, long now) {
+		TodoList list = this.listOf(todo);
+		boolean open = list != null && !todo.isDone() && todo.hasDueDate();
+		boolean overdue = open && todo.pastDue(now);
+		Pending p = this.pendingOf.get(todo);
+		// unchanged if the title, the comment or the priority changed
+		if (p == null || !open || overdue || p.due != todo.getDueDateMillis()) {
+			if (p != null) {
+				this.pendingOf.remove(todo);
+				this.pending.remove(p);
+			}
+			if (open && !overdue) {
+				p = new Pending(todo.getDueDateMillis(), this.sequence++, todo);
+				this.pending.add(p);
+				this.pendingOf.put(todo, p);
+			}
+		}
+		TodoList counted = overdue ? this.overdue.put(todo, list) : this.overdue.remove(todo);
+		if (counted != (overdue ? list : null)) {
+			if (counted != null) {
+				this.count(counted, -1);
+			}
+			if (overdue) {
+				this.count(list, 1);
+			}
+		}
+		todo.setOverdue(overdue);
+	}
+
+	private void count(TodoList list, int delta) {
+		int n = this.counts.getOrDefault(list, 0) + delta;
+		if (n > 0) {
+			this.counts.put(list, n);
+		} else {
+			this.counts.remove(list);
+		}
+		list.setOverdue(n > 0);
+	}
+
+	/**
+	 * Mark the items that got due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the number of items that got overdue
+	 */
+	int expire(long now) {
+		int expired = 0;
+		while (!this.pending.isEmpty() && this.pending.first().due < now) {
+			Pending p = this.pending.pollFirst();
+			this.pendingOf.remove(p.todo);
+			this.update(p.todo, now);
+			expired++;
+		}
+		return expired;
+	}
+
+	/**
+	 * Let the timer fire when the next item gets due
+	 */
+	private void schedule() {
+		if (this.timer == null) {
+			return;
+		}
+		long next = this.pending.isEmpty() ? Long.MAX_VALUE : this.pending.first().due;
+		if (next == this.scheduled) {
+			return;
+		}
+		this.timer.stop();
+		this.scheduled = next;
+		if (next == Long.MAX_VALUE) {
+			return;
+		}
+		// pastDue compares with <, so the item is due one millisecond later
+		long delay = Math.max(1, Math.min(MAX_DELAY, next + 1 - System.currentTimeMillis()));
+		this.timer.setDuration(Duration.millis(delay));
+		this.timer.playFromStart();
+	}
+
+	/**
+	 * Update an item or all items of a list
+	 *
+	 * @param object the item or the list
+	 */
+	private void update(Tracked object) {
+		long now = System.currentTimeMillis();
+		if (object instanceof Todo) {
+			this.update((Todo) object, now);
+		} else if (object instanceof TodoList) {
+			for (Todo todo : ((TodoList) object).getTodos()) {
+				this.update(todo, now);
+			}
+		}
+		this.schedule();
+	}
+
+	@Override
+	public void added(Tracked object) {
+		this.update(object);
+	}
+
+	@Override
+	public void removed(Tracked object) {
+		// a moved object was already added to its new parent
+		if (object.getParent() == null) {
+			this.update(object);
+		}
+	}
+
+	@Override
+	public void changed(Todo todo) {
+		this.update(todo);
+	}
+
+	/**
+	 * Gets overdue count.
+	 *
+	 * @return the number of overdue items of the user
+	 */
+	int getOverdueCount() {
+		return this.overdue.size();
+	}
+}
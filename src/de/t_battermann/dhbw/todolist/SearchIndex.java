@@ -0,0 +1,286 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Full-text index of the titles and comments of the items of a user.
+ * <p>
+ * Titles and comments are split into lower case words (runs of letters and digits). Every indexed version of an item
+ * gets a number, and every word has a posting list with the numbers of the items containing it. The words are sorted,
+ * so all words starting with a prefix are a range of the dictionary. A query matches the items containing a word
+ * starting with each of its words.
+ * <p>
+ * The index is a ModelListener of the user. An item whose title or comment changed gets a new number, the old one
+ * becomes a tombstone that the queries skip. Like the TodoTable, nothing is removed from the posting lists; the index
+ * is rebuilt when there are more tombstones than items. Has to be used on the JavaFX thread.
+ */
+final class SearchIndex implements ModelListener {
+	// longer words are cut, queries are cut the same way
+	private static final int MAX_WORD_LENGTH = 32;
+
+	/**
+	 * The numbers of the items containing a word, in ascending order
+	 */
+	private static class Posting {
+		int[] ids = new int[2];
+		int size = 0;
+
+		void add(int id) {
+			// every word of an item is added once, the ids are ascending
+			if (this.size > 0 && this.ids[this.size - 1] == id) {
+				return;
+			}
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size++] = id;
+		}
+	}
+
+	private final User user;
+	private final TreeMap<String, Posting> words = new TreeMap<>();
+	private final Map<Todo, Integer> ids = new IdentityHashMap<>();
+	// indexed items by number, null for tombstones
+	private Todo[] items = new Todo[16];
+	// the indexed texts, to notice whether a change concerns them
+	private String[] titles = new String[16];
+	private String[] comments = new String[16];
+	private int next = 0;
+	private Runnable onChanged = null;
+
+	/**
+	 * Instantiates a new SearchIndex of the loaded TodoLists of a user.
+	 *
+	 * @param user the user
+	 */
+	SearchIndex(User user) {
+		this.user = user;
+		for (TodoList list : user.getTodoLists()) {
+			for (Todo todo : list.getTodos()) {
+				this.update(todo);
+			}
+		}
+		user.addModelListener(this);
+	}
+
+	/**
+	 * Stop following the changes of the user
+	 */
+	void close() {
+		this.user.removeModelListener(this);
+	}
+
+	/**
+	 * Sets on changed.
+	 *
+	 * @param onChanged gets called after items were added, removed or their texts changed
+	 */
+	void setOnChanged(Runnable onChanged) {
+		this.onChanged = onChanged;
+	}
+
+	/**
+	 * Split a text into words
+	 *
+	 * @param text     the text or null
+	 * @param consumer receives the lower case words, a word may be passed more than once
+	 */
+	static void tokenize(String text, Consumer<String> consumer) {
+		if (text == null) {
+			return;
+		}
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				if (word.length() < MAX_WORD_LENGTH) {
+					word.append(Character.toLowerCase(c));
+				}
+			} else if (word.length() > 0) {
+				consumer.accept(word.toString());
+				word.setLength(0);
+			}
+		}
+	}
+
+	/**
+	 * Index an item again after it was added, removed or changed
+	 *
+	 * @param todo the item
+	 * @return true if the index changed
+	 */
+	private boolean update(Todo todo) {
+		Integer old = this.ids.get(todo);
+		Tracked parent = todo.getParent();
+		boolean indexed = parent instanceof TodoList && parent.getParent() == this.user;
+		if (old != null && indexed && this.titles[old] == todo.getTitle() && this.comments[old] == todo.getComment()) {
+			// the flags or the due date changed
+			return false;
+		}
+		if (old != null) {
+			this.ids.remove(todo);
+			this.items[old] = null;
+			this.titles[old] = null;
+			this.comments[old] = null;
+		}
+		if (indexed) {
+			this.add(todo);
+		}
+		if (this.next - this.ids.size() > Math.max(this.ids.size(), 1024)) {
+			this.rebuild();
+		}
+		return old != null || indexed;
+	}
+
+	/**
+	 * Give an item a new number and add its words
+	 *
+	 * @param todo the item
+	 */
+	private void add(Todo todo) {
+		if (this.next == this.items.length) {
+			int capacity = this.items.length * 2;
+			this.items = Arrays.copyOf(this.items, capacity);
+			this.titles = Arrays.copyOf(this.titles, capacity);
+			this.comments = Arrays.copyOf(this.comments, capacity);
+		}
+		int id = this.next++;
+		this.items[id] = todo;
+		this.titles[id] = todo.getTitle();
+		this.comments[id] = todo.getComment();
+		this.ids.put(todo, id);
+		Consumer<String> addWord = word -> this.words.computeIfAbsent(word, w -> new Posting()).add(id);
+		tokenize(todo.getTitle(), addWord);
+		tokenize(todo.getComment(), addWord);
+	}
+
+	/**
+	 * Drop the tombstones and number the items again
+	 */
+	private void rebuild() {
+		Todo[] live = new Todo[this.ids.size()];
+		int n = 0;
+		for (int id = 0; id < this.next; id++) {
+			if (this.items[id] != null) {
+				live[n++] = this.items[id];
+			}
+		}
+		this.words.clear();
+		this.ids.clear();
+		int capacity = Math.max(16, Integer.highestOneBit(n) * 2);
+		this.items = new Todo[capacity];
+		this.titles = new String[capacity];
+		this.comments = new String[capacity];
+		this.next = 0;
+		for (Todo todo : live) {
+			this.add(todo);
+		}
+	}
+
+	private void update(Tracked object) {
+		boolean changed = false;
+		if (object instanceof Todo) {
+			changed = this.update((Todo) object);
+		} else if (object instanceof TodoList) {
+			for (Todo todo : ((TodoList) object).getTodos()) {
+				changed |= this.update(todo);
+			}
+		}
+		if (changed && this.onChanged != null) {
+			this.onChanged.run();
+		}
+	}
+
+	@Override
+	public void added(Tracked object) {
+		this.update(object);
+	}
+
+	@Override
+	public void removed(Tracked object) {
+		// a moved object was already added to its new parent
+		if (object.getParent() == null) {
+			this.update(object);
+		}
+	}
+
+	@Override
+	public void changed(Todo todo) {
+		this.update((Tracked) todo);
+	}
+
+	/**
+	 * Get the posting lists of the words starting with a prefix
+	 *
+	 * @param prefix the prefix
+	 * @return the posting lists
+	 */
+	private Collection<Posting> postings(String prefix) {
+		return this.words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+	}
+
+	/**
+	 * Search the items
+	 *
+	 * @param query the words to search for, every word matches the words of an item starting with it
+	 * @param limit the maximum number of results
+	 * @return the items containing all the words, oldest changes first
+	 */
+	List<Todo> search(String query, int limit) {
+		List<String> prefixes = new ArrayList<>();
+		tokenize(query, word -> {
+			if (!prefixes.contains(word)) {
+				prefixes.add(word);
+			}
+		});
+		List<Todo> result = new ArrayList<>();
+		if (prefixes.isEmpty()) {
+			return result;
+		}
+		// the longest prefix has the fewest words, the others are checked against its matches only
+		prefixes.sort(Comparator.comparingInt(String::length).reversed());
+		BitSet matches = new BitSet(this.next);
+		for (Posting posting : this.postings(prefixes.get(0))) {
+			for (int i = 0; i < posting.size; i++) {
+				matches.set(posting.ids[i]);
+			}
+		}
+		for (int p = 1; p < prefixes.size() && !matches.isEmpty(); p++) {
+			BitSet other = new BitSet(this.next);
+			for (Posting posting : this.postings(prefixes.get(p))) {
+				for (int i = 0; i < posting.size; i++) {
+					if (matches.get(posting.ids[i])) {
+						other.set(posting.ids[i]);
+					}
+				}
+			}
+			matches = other;
+		}
+		for (int id = matches.nextSetBit(0); id >= 0 && result.size() < limit; id = matches.nextSetBit(id + 1)) {
+			// tombstones are skipped
+			if (this.items[id] != null) {
+				result.add(this.items[id]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets size.
+	 *
+	 * @return the number of indexed items
+	 */
+	int size() {
+		return this.ids.size();
+	}
+
+	/**
+	 * Gets word count.
+	 *
+	 * @return the number of different words
+	 */
+	int getWordCount() {
+		return this.words.size();
+	}
+}
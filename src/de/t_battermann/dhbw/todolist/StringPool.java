@@ -0,0 +1,94 @@
+package de.t_battermann.dhbw.todolist;
+
+/**
+ * Deduplicates the strings read by an import.
+ * <p>
+ * Databases contain many equal titles, comments and names (the default item of every list, "Default" lists, titles
+ * made from templates, ...) and every parsed copy would be a separate String. The pool is a fixed size table indexed
+ * by the hash of the string, a string that collides with another one replaces it, so the pool never grows. Unlike
+ * {@link String#intern()} the pool is only referenced by the import and is discarded with it. Not thread-safe.
+ */
+final class StringPool {
+	private static final int SIZE = 1 << 12;
+	// longer strings are rarely equal and would evict the common ones
+	private static final int MAX_LENGTH = 256;
+
+	private final String[] table = new String[SIZE];
+	private int lookups = 0;
+	private int hits = 0;
+	private long saved = 0;
+
+	/**
+	 * Get the pooled copy of a string
+	 *
+	 * @param s the string or null
+	 * @return an equal string from the pool or the string itself
+	 */
+	String get(String s) {
+		if (s == null || s.length() > MAX_LENGTH) {
+			return s;
+		}
+		this.lookups++;
+		int h = s.hashCode();
+		int slot = (h ^ (h >>> 16)) & (SIZE - 1);
+		String pooled = this.table[slot];
+		if (pooled != null && pooled.equals(s)) {
+			if (pooled != s) {
+				this.hits++;
+				this.saved += sizeOf(s);
+			}
+			return pooled;
+		}
+		this.table[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Estimate the heap size of a string (compressed oops, compact strings)
+	 *
+	 * @param s the string
+	 * @return the size of the String and its array in bytes
+	 */
+	private static long sizeOf(String s) {
+		int bytesPerChar = 1;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0xFF) {
+				bytesPerChar = 2;
+				break;
+			}
+		}
+		return 24 + ((16 + s.length() * bytesPerChar + 7) & ~7);
+	}
+
+	/**
+	 * Gets lookups.
+	 *
+	 * @return the number of strings passed to the pool
+	 */
+	int getLookups() {
+		return this.lookups;
+	}
+
+	/**
+	 * Gets hits.
+	 *
+	 * @return the number of strings replaced by a pooled copy
+	 */
+	int getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Gets saved.
+	 *
+	 * @return the estimated heap size of the replaced strings in bytes
+	 */
+	long getSaved() {
+		return this.saved;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Deduplicated %d of %d strings, saved about %.1f MB", this.hits, this.lookups, this.saved / 1e6);
+	}
+}
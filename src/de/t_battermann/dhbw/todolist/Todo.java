@@ -1,27 +1,85 @@
 package de.t_battermann.dhbw.todolist;
 
-import java.text.SimpleDateFormat;
+import javafx.beans.Observable;
+import javafx.beans.property.*;
+
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
  * This class represents a todo item containing all the data.
  */
-public class Todo {
-	private String uuid;
+public class Todo extends Tracked {
+	/**
+	 * Value of the due date if the item has none
+	 */
+	public static final long NO_DUE_DATE = Long.MIN_VALUE;
+
+	private UUID uuid;
 	private String title = "No title";
 	private boolean done = false;
 	private boolean prio = false;
 	private String comment = "";
-	private Calendar dueDate = null;
+	private long dueDate = NO_DUE_DATE;
+	// position in the columns of the TodoTable containing the item
+	private int row = -1;
+	// created when the properties are first used, most items are never shown
+	private Properties properties = null;
+	// text shown in the list, built when it is first shown and cleared when the title or the due date change
+	private String label = null;
+	// open and past due, maintained by the OverdueWatcher and not saved
+	private boolean overdue = false;
+
+	/**
+	 * Observable copies of the fields, the item is the bean of every property
+	 */
+	private static class Properties {
+		final ReadOnlyStringWrapper title;
+		final ReadOnlyStringWrapper comment;
+		final ReadOnlyBooleanWrapper done;
+		final ReadOnlyBooleanWrapper prio;
+		final ReadOnlyLongWrapper dueDate;
+		final ReadOnlyBooleanWrapper overdue;
+		// counts the changes, the lists of items only listen to it, so an edit is reported once
+		final ReadOnlyIntegerWrapper changes;
+		// set while the model listener handles a change, a changed overdue flag is reported with that change
+		boolean changing = false;
+		boolean pending = false;
+
+		Properties(Todo todo) {
+			this.title = new ReadOnlyStringWrapper(todo, "title", todo.title);
+			this.comment = new ReadOnlyStringWrapper(todo, "comment", todo.comment);
+			this.done = new ReadOnlyBooleanWrapper(todo, "done", todo.done);
+			this.prio = new ReadOnlyBooleanWrapper(todo, "prio", todo.prio);
+			this.dueDate = new ReadOnlyLongWrapper(todo, "dueDate", todo.dueDate);
+			this.overdue = new ReadOnlyBooleanWrapper(todo, "overdue", todo.overdue);
+			this.changes = new ReadOnlyIntegerWrapper(todo, "changes", 0);
+		}
+
+		/**
+		 * Report a change to the lists of items
+		 *
+		 * @param changed true if the value set by the setter changed
+		 */
+		void report(boolean changed) {
+			if (changed || this.pending) {
+				this.pending = false;
+				this.changes.set(this.changes.get() + 1);
+			}
+		}
+	}
 
 	/**
 	 * Instantiates a new empty Todo item.
 	 */
 	public Todo() {
-		this.uuid = UUID.randomUUID().toString();
+		this.uuid = UUID.randomUUID();
 	}
 
 	/**
@@ -34,7 +92,21 @@ public class Todo {
 	 * @param done    Is the item done?
 	 * @param prio    Has the item high priority?
 	 */
-	protected Todo(String uuid, String title, String comment, Calendar dueDate, boolean done, boolean prio) {
+	protected Todo(UUID uuid, String title, String comment, Calendar dueDate, boolean done, boolean prio) {
+		this(uuid, title, comment, dueDate != null ? dueDate.getTimeInMillis() : NO_DUE_DATE, done, prio);
+	}
+
+	/**
+	 * Instantiates a new Todo.
+	 *
+	 * @param uuid    the uuid
+	 * @param title   the title
+	 * @param comment the comment
+	 * @param dueDate the due date in milliseconds since the epoch or NO_DUE_DATE
+	 * @param done    Is the item done?
+	 * @param prio    Has the item high priority?
+	 */
+	protected Todo(UUID uuid, String title, String comment, long dueDate, boolean done, boolean prio) {
 		this.uuid = uuid;
 		this.title = title;
 		this.comment = comment;
@@ -50,17 +122,13 @@ public class Todo {
 	 * @param comment the comment
 	 */
 	public Todo(String title, String comment) {
-		this.uuid = UUID.randomUUID().toString();
+		this.uuid = UUID.randomUUID();
 		this.title = title;
 		this.comment = comment;
 	}
 
-	/**
-	 * Gets uuid.
-	 *
-	 * @return the uuid
-	 */
-	public String getUuid() {
+	@Override
+	public UUID getUuid() {
 		return this.uuid;
 	}
 
@@ -79,7 +147,24 @@ public class Todo {
 	 * @param title the title
 	 */
 	public void setTitle(String title) {
+		boolean changed = !Objects.equals(this.title, title);
 		this.title = title;
+		this.label = null;
+		this.touch();
+		this.notifyChanged();
+		if (this.properties != null) {
+			this.properties.title.set(title);
+			this.properties.report(changed);
+		}
+	}
+
+	/**
+	 * Title property.
+	 *
+	 * @return the title property
+	 */
+	public ReadOnlyStringProperty titleProperty() {
+		return this.properties().title.getReadOnlyProperty();
 	}
 
 	/**
@@ -97,7 +182,24 @@ public class Todo {
 	 * @param done the done
 	 */
 	public void setDone(boolean done) {
+		boolean changed = this.done != done;
 		this.done = done;
+		this.updateRow();
+		this.touch();
+		this.notifyChanged();
+		if (this.properties != null) {
+			this.properties.done.set(done);
+			this.properties.report(changed);
+		}
+	}
+
+	/**
+	 * Done property.
+	 *
+	 * @return the done property
+	 */
+	public ReadOnlyBooleanProperty doneProperty() {
+		return this.properties().done.getReadOnlyProperty();
 	}
 
 	/**
@@ -115,7 +217,24 @@ public class Todo {
 	 * @param prio the prio
 	 */
 	public void setPrio(boolean prio) {
+		boolean changed = this.prio != prio;
 		this.prio = prio;
+		this.updateRow();
+		this.touch();
+		this.notifyChanged();
+		if (this.properties != null) {
+			this.properties.prio.set(prio);
+			this.properties.report(changed);
+		}
+	}
+
+	/**
+	 * Prio property.
+	 *
+	 * @return the prio property
+	 */
+	public ReadOnlyBooleanProperty prioProperty() {
+		return this.properties().prio.getReadOnlyProperty();
 	}
 
 	/**
@@ -133,37 +252,111 @@ public class Todo {
 	 * @param comment the comment
 	 */
 	public void setComment(String comment) {
+		boolean changed = !Objects.equals(this.comment, comment);
 		this.comment = comment;
+		this.touch();
+		this.notifyChanged();
+		if (this.properties != null) {
+			this.properties.comment.set(comment);
+			this.properties.report(changed);
+		}
+	}
+
+	/**
+	 * Comment property.
+	 *
+	 * @return the comment property
+	 */
+	public ReadOnlyStringProperty commentProperty() {
+		return this.properties().comment.getReadOnlyProperty();
+	}
+
+	/**
+	 * Has the item a due date?
+	 *
+	 * @return true if a due date is set
+	 */
+	public boolean hasDueDate() {
+		return this.dueDate != NO_DUE_DATE;
+	}
+
+	/**
+	 * Gets due date millis.
+	 *
+	 * @return the due date in milliseconds since the epoch or NO_DUE_DATE
+	 */
+	public long getDueDateMillis() {
+		return this.dueDate;
+	}
+
+	/**
+	 * Sets due date millis.
+	 *
+	 * @param dueDate the due date in milliseconds since the epoch or NO_DUE_DATE
+	 */
+	public void setDueDateMillis(long dueDate) {
+		boolean changed = this.dueDate != dueDate;
+		this.dueDate = dueDate;
+		this.label = null;
+		this.updateRow();
+		this.touch();
+		this.notifyChanged();
+		if (this.properties != null) {
+			this.properties.dueDate.set(dueDate);
+			this.properties.report(changed);
+		}
+	}
+
+	/**
+	 * Due date property.
+	 *
+	 * @return the due date in milliseconds since the epoch or NO_DUE_DATE
+	 */
+	public ReadOnlyLongProperty dueDateProperty() {
+		return this.properties().dueDate.getReadOnlyProperty();
 	}
 
 	/**
 	 * Gets due date.
 	 *
-	 * @return the due date
+	 * @return a new Calendar containing the due date or null
 	 */
 	public Calendar getDueDate() {
+		if (!this.hasDueDate()) {
+			return null;
+		}
+		Calendar dueDate = new GregorianCalendar();
+		dueDate.setTimeInMillis(this.dueDate);
 		return dueDate;
 	}
 
 	/**
 	 * Sets due date.
 	 *
-	 * @param dueDate the due date
+	 * @param dueDate the due date or null
 	 */
 	public void setDueDate(Calendar dueDate) {
-		this.dueDate = dueDate;
+		this.setDueDateMillis(dueDate != null ? dueDate.getTimeInMillis() : NO_DUE_DATE);
+	}
+
+	/**
+	 * Gets the day the item is due.
+	 *
+	 * @return the local date or null
+	 */
+	public LocalDate getDueLocalDate() {
+		if (!this.hasDueDate()) {
+			return null;
+		}
+		return Instant.ofEpochMilli(this.dueDate).atZone(ZoneId.systemDefault()).toLocalDate();
 	}
 
 	public String getTime() {
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("HH:mm");
-		return this.getDueDate() != null ? format.format(this.getDueDate().getTime()) : "00:00";
+		return this.hasDueDate() ? DateCodec.formatTime(this.dueDate) : "00:00";
 	}
 
 	public String getDateTime() {
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyy-MM-dd HH:mm");
-		return this.getDueDate() != null ? format.format(this.getDueDate().getTime()) : "0000-00-00 00:00";
+		return this.hasDueDate() ? DateCodec.formatDateTime(this.dueDate) : "0000-00-00 00:00";
 	}
 
 	public boolean validateTime(String time) {
@@ -171,7 +364,6 @@ public class Todo {
 	}
 
 	public void setDueDate(LocalDate date, String time) {
-		Calendar nd = new GregorianCalendar();
 		int hour = 0;
 		int minute = 0;
 		if (time.matches("\\d{1,2}:\\d{1,2}(:\\d{1,2})?")) {
@@ -181,20 +373,155 @@ public class Todo {
 		} else if (time.matches("\\d{1,4}")) {
 			if (time.length() > 2) {
 				hour = Integer.parseInt(time.substring(0, 2));
-				minute = Integer.parseInt(time.substring(2, 2));
+				minute = Integer.parseInt(time.substring(2));
 			} else {
 				hour = Integer.parseInt(time);
 			}
 		}
-		nd.set(date.getYear(), date.getMonthValue(), date.getDayOfMonth(), hour < 24 ? hour : 0, minute < 60 ? minute : 0);
-		this.dueDate = nd;
+		LocalTime t = LocalTime.of(hour < 24 ? hour : 0, minute < 60 ? minute : 0);
+		this.setDueDateMillis(date.atTime(t).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+	}
+
+	/**
+	 * Gets label.
+	 *
+	 * @return the title and the due date as shown in the list
+	 */
+	public String getLabel() {
+		if (this.label == null) {
+			this.label = this.hasDueDate() ? this.title + " (due: " + this.getDateTime() + ")" : String.valueOf(this.title);
+		}
+		return this.label;
+	}
+
+	/**
+	 * Is the item overdue? Only maintained while an OverdueWatcher watches the user of the item.
+	 *
+	 * @return true if the item is open and past due
+	 */
+	public boolean isOverdue() {
+		return this.overdue;
+	}
+
+	/**
+	 * Sets overdue.
+	 *
+	 * @param overdue true if the item is open and past due
+	 */
+	void setOverdue(boolean overdue) {
+		this.overdue = overdue;
+		if (this.properties != null && this.properties.overdue.get() != overdue) {
+			this.properties.overdue.set(overdue);
+			if (this.properties.changing) {
+				this.properties.pending = true;
+			} else {
+				this.properties.report(true);
+			}
+		}
 	}
 
+	/**
+	 * Overdue property.
+	 *
+	 * @return the overdue property
+	 */
+	public ReadOnlyBooleanProperty overdueProperty() {
+		return this.properties().overdue.getReadOnlyProperty();
+	}
+
+	/**
+	 * Is the item past due?
+	 *
+	 * @return true if the due date has passed
+	 */
 	public boolean pastDue() {
-		if (this.dueDate == null)
-			return false;
-		Calendar today = new GregorianCalendar();
-		return today.after(this.dueDate);
+		return this.pastDue(System.currentTimeMillis());
+	}
+
+	/**
+	 * Is the item past due at a given time? Used to check many items against the same time.
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return true if the due date is before the given time
+	 */
+	public boolean pastDue(long now) {
+		return this.dueDate != NO_DUE_DATE && this.dueDate < now;
+	}
+
+	/**
+	 * Gets row.
+	 *
+	 * @return the row of the item in the TodoTable of its list
+	 */
+	int getRow() {
+		return this.row;
+	}
+
+	/**
+	 * Sets row.
+	 *
+	 * @param row the row of the item in the TodoTable of its list
+	 */
+	void setRow(int row) {
+		this.row = row;
+	}
+
+	/**
+	 * Update the flags and due date stored in the TodoTable of the list
+	 */
+	private void updateRow() {
+		if (this.getParent() instanceof TodoList) {
+			((TodoList) this.getParent()).todoChanged(this);
+		}
+	}
+
+	private Properties properties() {
+		if (this.properties == null) {
+			this.properties = new Properties(this);
+		}
+		return this.properties;
+	}
+
+	/**
+	 * Get the properties of an item, used as extractor of the observable lists of items
+	 *
+	 * @param todo the item
+	 * @return the property counting the changes of the item
+	 */
+	static Observable[] observables(Todo todo) {
+		// the wrapper, its read-only view would be an extra object for every item
+		return new Observable[]{todo.properties().changes};
+	}
+
+	/**
+	 * Notify the listener of the user containing the item
+	 */
+	private void notifyChanged() {
+		ModelListener listener = this.getModelListener();
+		if (listener != null) {
+			Properties p = this.properties;
+			if (p != null) {
+				p.changing = true;
+			}
+			try {
+				listener.changed(this);
+			} finally {
+				if (p != null) {
+					p.changing = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy the item, the copy has the same uuid and revision
+	 *
+	 * @return the copy
+	 */
+	protected Todo copy() {
+		Todo copy = new Todo(this.uuid, this.title, this.comment, this.dueDate, this.done, this.prio);
+		copy.setRevision(this.getRevision());
+		return copy;
 	}
 
 	@Override
@@ -1,17 +1,28 @@
 package de.t_battermann.dhbw.todolist;
 
-import java.util.LinkedList;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.ObservableList;
+
 import java.util.List;
 import java.util.UUID;
 
 /**
  * This class contains a todo list with all its items.
  */
-public class TodoList {
-	private String uuid = UUID.randomUUID().toString();
-	private List<Todo> todos = new LinkedList<>();
-	private String name;
+public class TodoList extends Tracked {
+	private UUID uuid = UUID.randomUUID();
+	private final TodoTable todos = new TodoTable(this);
+	// created when the list is first shown
+	private TrackedItems<Todo> items = null;
+	// a property, so the cells showing the list are updated on a rename
+	private final ReadOnlyStringWrapper name = new ReadOnlyStringWrapper(this, "name");
 	private boolean changeable;
+	// has overdue items, maintained by the OverdueWatcher and not saved
+	private final ReadOnlyBooleanWrapper overdue = new ReadOnlyBooleanWrapper(this, "overdue", false);
 
 	/**
 	 * Instantiates a new Todo list.
@@ -20,7 +31,7 @@ public class TodoList {
 	 */
 	public TodoList(String name) {
 		this.changeable = true;
-		this.name = name;
+		this.name.set(name);
 	}
 
 	/**
@@ -31,7 +42,7 @@ public class TodoList {
 	 */
 	public TodoList(String name, boolean changeable) {
 		this.changeable = changeable;
-		this.name = name;
+		this.name.set(name);
 		this.initList();
 	}
 
@@ -42,10 +53,9 @@ public class TodoList {
 	 * @param name       the name
 	 * @param changeable Can the name be changed?
 	 */
-	protected TodoList(String uuid, String name, boolean changeable) {
+	protected TodoList(UUID uuid, String name, boolean changeable) {
 		this.uuid = uuid;
-		this.todos = new LinkedList<>();
-		this.name = name;
+		this.name.set(name);
 		this.changeable = changeable;
 	}
 
@@ -53,12 +63,8 @@ public class TodoList {
 		this.todos.add(new Todo("Start using your TodoList", "Add, delete and modify entries."));
 	}
 
-	/**
-	 * Gets uuid.
-	 *
-	 * @return the uuid
-	 */
-	public String getUuid() {
+	@Override
+	public UUID getUuid() {
 		return this.uuid;
 	}
 
@@ -68,7 +74,7 @@ public class TodoList {
 	 * @return the name
 	 */
 	public String getName() {
-		return name;
+		return this.name.get();
 	}
 
 	/**
@@ -77,8 +83,14 @@ public class TodoList {
 	 * @param name the name
 	 */
 	public void setName(String name) {
-		if (this.isChangeable())
-			this.name = name;
+		if (this.isChangeable()) {
+			String oldName = this.name.get();
+			this.name.set(name);
+			if (this.getParent() instanceof User) {
+				((User) this.getParent()).todoListRenamed(this, oldName);
+			}
+			this.touch();
+		}
 	}
 
 	/**
@@ -90,6 +102,28 @@ public class TodoList {
 		return todos;
 	}
 
+	/**
+	 * Gets the todos as observable list, changes of the items are reported as updates.
+	 * Once it exists, all changes of the list are made through it.
+	 *
+	 * @return the observable todos
+	 */
+	public ObservableList<Todo> getObservableTodos() {
+		if (this.items == null) {
+			this.items = new TrackedItems<>(this.todos, Todo::observables);
+		}
+		return this.items;
+	}
+
+	/**
+	 * Get the list changes are made through
+	 *
+	 * @return the observable todos if they exist, else the todos
+	 */
+	private List<Todo> modifiable() {
+		return this.items != null ? this.items : this.todos;
+	}
+
 	/**
 	 * Add todo.
 	 *
@@ -100,7 +134,7 @@ public class TodoList {
 		if (todos.contains(todo)) {
 			return false;
 		}
-		todos.add(todo);
+		this.modifiable().add(todo);
 		return true;
 	}
 
@@ -110,9 +144,100 @@ public class TodoList {
 	 * @param todo The Item to be deleted
 	 */
 	public void deleteTodo(Todo todo) {
-		if (todos.contains(todo)) {
-			todos.remove(todo);
-		}
+		this.modifiable().remove(todo);
+	}
+
+	/**
+	 * Count the items that aren’t done yet
+	 *
+	 * @return the number of open items
+	 */
+	public int countUndone() {
+		return this.todos.count(TodoTable.DONE, (byte) 0);
+	}
+
+	/**
+	 * Count the open items past due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the number of open items with a due date before now
+	 */
+	public int countPastDue(long now) {
+		return this.todos.countPastDue(now);
+	}
+
+	/**
+	 * Get the open items past due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the open items with a due date before now, in list order
+	 */
+	public List<Todo> getPastDue(long now) {
+		return this.todos.pastDue(now);
+	}
+
+	/**
+	 * Update the columns after the flags or the due date of a item changed
+	 *
+	 * @param todo the item
+	 */
+	void todoChanged(Todo todo) {
+		this.todos.changed(todo);
+	}
+
+	/**
+	 * Keep the slot of an item that is added to another list before it is removed from this one
+	 *
+	 * @param todo the item
+	 */
+	void todoMoved(Todo todo) {
+		this.todos.moved(todo);
+	}
+
+	/**
+	 * Has the list overdue items? Only maintained while an OverdueWatcher watches the user of the list.
+	 *
+	 * @return true if the list contains open items that are past due
+	 */
+	public boolean isOverdue() {
+		return this.overdue.get();
+	}
+
+	/**
+	 * Sets overdue.
+	 *
+	 * @param overdue true if the list contains open items that are past due
+	 */
+	void setOverdue(boolean overdue) {
+		this.overdue.set(overdue);
+	}
+
+	/**
+	 * Overdue property.
+	 *
+	 * @return the overdue property
+	 */
+	public ReadOnlyBooleanProperty overdueProperty() {
+		return this.overdue.getReadOnlyProperty();
+	}
+
+	/**
+	 * Get the properties of a TodoList, used as extractor of the observable lists of TodoLists
+	 *
+	 * @param list the TodoList
+	 * @return the name and overdue properties
+	 */
+	static Observable[] observables(TodoList list) {
+		return new Observable[]{list.nameProperty(), list.overdueProperty()};
+	}
+
+	/**
+	 * Name property.
+	 *
+	 * @return the name property
+	 */
+	public ReadOnlyStringProperty nameProperty() {
+		return this.name.getReadOnlyProperty();
 	}
 
 	/**
@@ -124,8 +249,48 @@ public class TodoList {
 		return changeable;
 	}
 
+	/**
+	 * Copy the list and its items, the copies have the same uuids and revisions
+	 *
+	 * @return the copy
+	 */
+	protected TodoList copy() {
+		long revision = this.getRevision();
+		TodoList copy = new TodoList(this.uuid, this.name.get(), this.changeable);
+		for (Todo todo : this.todos) {
+			copy.todos.add(todo.copy());
+		}
+		copy.setRevision(revision);
+		return copy;
+	}
+
+	/**
+	 * Copy the list without its items, for an export that takes the encoded list from its cache
+	 *
+	 * @return the copy, accessing its items fails
+	 */
+	protected TodoList stub() {
+		TodoList stub = new Stub(this.uuid, this.name.get(), this.changeable);
+		stub.setRevision(this.getRevision());
+		return stub;
+	}
+
 	@Override
 	public String toString() {
 		return this.getName();
 	}
+
+	/**
+	 * A list whose items weren’t copied
+	 */
+	private static final class Stub extends TodoList {
+		Stub(UUID uuid, String name, boolean changeable) {
+			super(uuid, name, changeable);
+		}
+
+		@Override
+		public List<Todo> getTodos() {
+			throw new IllegalStateException("The items of TodoList '" + this.getName() + "' weren’t copied");
+		}
+	}
 }
@@ -0,0 +1,96 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * TodoLists of a user, indexed by name and by uuid.
+ * <p>
+ * The order of the lists is kept by the list itself, the indexes are updated whenever a list is added, removed or
+ * renamed. If several lists have the same name, the name index contains the first one.
+ */
+class TodoListIndex extends TrackedList<TodoList> {
+	private final Map<String, TodoList> byName = new HashMap<>();
+	private final Map<UUID, TodoList> byUuid = new HashMap<>();
+	private final User owner;
+
+	/**
+	 * Instantiates a new TodoListIndex.
+	 *
+	 * @param owner the user owning the lists
+	 */
+	TodoListIndex(User owner) {
+		super(owner);
+		this.owner = owner;
+	}
+
+	@Override
+	protected void added(TodoList list) {
+		this.byUuid.put(list.getUuid(), list);
+		this.byName.putIfAbsent(list.getName(), list);
+		ModelListener listener = this.owner.getModelListener();
+		if (listener != null) {
+			listener.added(list);
+		}
+	}
+
+	@Override
+	protected void removed(TodoList list) {
+		this.byUuid.remove(list.getUuid(), list);
+		if (this.byName.remove(list.getName(), list)) {
+			this.reindex(list.getName());
+		}
+		ModelListener listener = this.owner.getModelListener();
+		if (listener != null) {
+			listener.removed(list);
+		}
+	}
+
+	/**
+	 * Update the name index after a list was renamed
+	 *
+	 * @param list    the list
+	 * @param oldName the previous name of the list
+	 */
+	void renamed(TodoList list, String oldName) {
+		if (this.byName.remove(oldName, list)) {
+			this.reindex(oldName);
+		}
+		this.byName.putIfAbsent(list.getName(), list);
+	}
+
+	/**
+	 * Index another list with a name that was removed from the index
+	 *
+	 * @param name the name
+	 */
+	private void reindex(String name) {
+		for (TodoList list : this) {
+			if (list.getName().equals(name)) {
+				this.byName.put(name, list);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets a list by its name.
+	 *
+	 * @param name the name
+	 * @return the list or null
+	 */
+	TodoList getByName(String name) {
+		return this.byName.get(name);
+	}
+
+	/**
+	 * Gets a list by its uuid.
+	 *
+	 * @param uuid the uuid
+	 * @return the list or null
+	 */
+	TodoList getByUuid(UUID uuid) {
+		return this.byUuid.get(uuid);
+	}
+}
@@ -0,0 +1,474 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.*;
+
+/**
+ * Items of a TodoList with their flags and due dates stored column by column.
+ * <p>
+ * Every item has a slot in the columns and knows its slot, so finding an item is O(1): the slot of an item is only
+ * valid in the table of the list that is its parent, an item without that parent isn’t looked for at all. An item that
+ * is moved is added to its new list before it is removed from the old one, the old table keeps the slot of such an item
+ * until it is removed. A removed item leaves a
+ * tombstone (a slot without the LIVE flag) behind, so nothing has to be moved; a Fenwick tree over the live slots maps
+ * between list indexes and slots in O(log n). The columns are compacted when more than half of the slots are
+ * tombstones. Items appended to the list get new slots, inserting in the middle rebuilds the columns.
+ * <p>
+ * The items stay the owners of their data, the flags and due dates are a copy in primitive arrays, so scans over a
+ * list (count the open items, find the items past due, ...) don’t have to follow a pointer per item. Like the
+ * TrackedList, the table sets the list as parent of its items and touches it when it is modified.
+ */
+class TodoTable extends AbstractList<Todo> implements RandomAccess {
+	static final byte DONE = 1;
+	static final byte PRIO = 2;
+	private static final byte LIVE = 4;
+
+	private final TodoList owner;
+	private Todo[] rows = new Todo[0];
+	private byte[] flags = new byte[0];
+	private long[] dueDates = new long[0];
+	// Fenwick tree counting the live slots, tree[i] covers the slots [i - (i & -i), i)
+	private int[] tree = new int[1];
+	private int slots = 0;
+	private int size = 0;
+	// slots of the items that were added to another list but not removed from this one yet, usually null
+	private Map<Todo, Integer> moved = null;
+
+	/**
+	 * Instantiates a new TodoTable.
+	 *
+	 * @param owner the TodoList containing the items
+	 */
+	TodoTable(TodoList owner) {
+		this.owner = owner;
+	}
+
+	private static byte flagsOf(Todo todo) {
+		if (todo == null) {
+			return LIVE;
+		}
+		return (byte) (LIVE | (todo.isDone() ? DONE : 0) | (todo.isPrio() ? PRIO : 0));
+	}
+
+	private void adopt(Todo todo, int slot) {
+		this.rows[slot] = todo;
+		this.flags[slot] = flagsOf(todo);
+		this.dueDates[slot] = todo != null ? todo.getDueDateMillis() : Todo.NO_DUE_DATE;
+		if (todo != null) {
+			if (todo.getParent() instanceof TodoList && todo.getParent() != this.owner) {
+				((TodoList) todo.getParent()).todoMoved(todo);
+			}
+			todo.setParent(this.owner);
+			todo.setRow(slot);
+			ModelListener listener = this.owner.getModelListener();
+			if (listener != null) {
+				listener.added(todo);
+			}
+		}
+	}
+
+	private void release(Todo todo) {
+		if (todo == null) {
+			return;
+		}
+		// a moved item already belongs to another list
+		if (todo.getParent() == this.owner) {
+			todo.setParent(null);
+		} else if (this.moved != null && this.moved.remove(todo) != null && this.moved.isEmpty()) {
+			this.moved = null;
+		}
+		ModelListener listener = this.owner.getModelListener();
+		if (listener != null) {
+			listener.removed(todo);
+		}
+	}
+
+	/**
+	 * Add a value to the count of a slot
+	 *
+	 * @param slot  the slot
+	 * @param delta the value
+	 */
+	private void update(int slot, int delta) {
+		for (int i = slot + 1; i < this.tree.length; i += i & -i) {
+			this.tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Find the slot of a list index
+	 *
+	 * @param index the index, has to be valid
+	 * @return the slot
+	 */
+	private int slotOf(int index) {
+		int pos = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(this.tree.length - 1); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next < this.tree.length && this.tree[next] < remaining) {
+				pos = next;
+				remaining -= this.tree[next];
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Get the list index of a slot
+	 *
+	 * @param slot the slot
+	 * @return the number of live slots before the slot
+	 */
+	private int indexOfSlot(int slot) {
+		int index = 0;
+		for (int i = slot; i > 0; i -= i & -i) {
+			index += this.tree[i];
+		}
+		return index;
+	}
+
+	/**
+	 * Find the slot of a item
+	 *
+	 * @param o the item
+	 * @return the slot or -1
+	 */
+	private int find(Object o) {
+		if (o instanceof Todo) {
+			Todo todo = (Todo) o;
+			if (todo.getParent() == this.owner) {
+				int slot = todo.getRow();
+				if (slot >= 0 && slot < this.slots && this.rows[slot] == o && (this.flags[slot] & LIVE) != 0) {
+					return slot;
+				}
+				return -1;
+			}
+			// the item was added to another list meanwhile, else it isn’t in this one
+			Integer slot = this.moved != null ? this.moved.get(todo) : null;
+			return slot != null ? slot : -1;
+		}
+		if (o != null) {
+			return -1;
+		}
+		for (int slot = 0; slot < this.slots; slot++) {
+			if ((this.flags[slot] & LIVE) != 0 && this.rows[slot] == o) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Move the live slots to the front, optionally leaving a slot empty for a new item
+	 *
+	 * @param capacity the minimal number of slots
+	 * @param gap      the index of the slot that is left empty or -1
+	 */
+	private void rebuild(int capacity, int gap) {
+		capacity = Math.max(capacity, this.size + (this.size >> 1) + 8);
+		Todo[] rows = new Todo[capacity];
+		byte[] flags = new byte[capacity];
+		long[] dueDates = new long[capacity];
+		int slot = 0;
+		for (int i = 0; i < this.slots; i++) {
+			if ((this.flags[i] & LIVE) == 0) {
+				continue;
+			}
+			if (slot == gap) {
+				slot++;
+			}
+			rows[slot] = this.rows[i];
+			flags[slot] = this.flags[i];
+			dueDates[slot] = this.dueDates[i];
+			if (rows[slot] != null && rows[slot].getParent() == this.owner) {
+				rows[slot].setRow(slot);
+			} else if (rows[slot] != null && this.moved != null && this.moved.containsKey(rows[slot])) {
+				this.moved.put(rows[slot], slot);
+			}
+			slot++;
+		}
+		this.slots = gap >= 0 ? this.size + 1 : this.size;
+		this.rows = rows;
+		this.flags = flags;
+		this.dueDates = dueDates;
+		// build the tree in linear time, the gap is counted by the caller
+		this.tree = new int[capacity + 1];
+		for (int i = 1; i <= capacity; i++) {
+			if (i - 1 < this.slots && i - 1 != gap) {
+				this.tree[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent <= capacity) {
+				this.tree[parent] += this.tree[i];
+			}
+		}
+	}
+
+	@Override
+	public Todo get(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		return this.rows[this.slotOf(index)];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Find the next live slot
+	 *
+	 * @param slot the first slot to check
+	 * @return the slot or the number of slots if there is none
+	 */
+	private int nextLive(int slot) {
+		while (slot < this.slots && (this.flags[slot] & LIVE) == 0) {
+			slot++;
+		}
+		return slot;
+	}
+
+	@Override
+	public Iterator<Todo> iterator() {
+		// walks the slots instead of looking up every index
+		return new Iterator<Todo>() {
+			private int slot = nextLive(0);
+			private int last = -1;
+			private int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return this.slot < slots;
+			}
+
+			@Override
+			public Todo next() {
+				if (modCount != this.expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				this.last = this.slot;
+				this.slot = nextLive(this.slot + 1);
+				return rows[this.last];
+			}
+
+			@Override
+			public void remove() {
+				if (this.last < 0) {
+					throw new IllegalStateException();
+				}
+				if (modCount != this.expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				// the slots may be compacted, continue at the index of the next item
+				int next = indexOfSlot(this.last);
+				removeSlot(this.last);
+				this.slot = next < size ? slotOf(next) : slots;
+				this.last = -1;
+				this.expectedModCount = modCount;
+			}
+		};
+	}
+
+	@Override
+	public Todo set(int index, Todo todo) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		int slot = this.slotOf(index);
+		Todo old = this.rows[slot];
+		this.release(old);
+		this.adopt(todo, slot);
+		this.owner.touch();
+		return old;
+	}
+
+	@Override
+	public void add(int index, Todo todo) {
+		if (index < 0 || index > this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		int slot;
+		if (index == this.size) {
+			if (this.slots == this.rows.length) {
+				this.rebuild(this.size + 1, -1);
+			}
+			slot = this.slots++;
+		} else {
+			this.rebuild(this.size + 1, index);
+			slot = index;
+		}
+		this.update(slot, 1);
+		this.adopt(todo, slot);
+		this.size++;
+		this.modCount++;
+		this.owner.touch();
+	}
+
+	@Override
+	public Todo remove(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		int slot = this.slotOf(index);
+		Todo old = this.rows[slot];
+		this.removeSlot(slot);
+		return old;
+	}
+
+	/**
+	 * Leave a tombstone in a slot
+	 *
+	 * @param slot the slot
+	 */
+	private void removeSlot(int slot) {
+		Todo old = this.rows[slot];
+		this.rows[slot] = null;
+		this.flags[slot] = 0;
+		this.update(slot, -1);
+		this.size--;
+		this.modCount++;
+		this.release(old);
+		if (this.slots - this.size > Math.max(this.size, 16)) {
+			this.rebuild(0, -1);
+		}
+		this.owner.touch();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int slot = this.find(o);
+		if (slot < 0) {
+			return false;
+		}
+		this.removeSlot(slot);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return this.find(o) >= 0;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		int slot = this.find(o);
+		return slot < 0 ? -1 : this.indexOfSlot(slot);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		// an item is in a list only once
+		return this.indexOf(o);
+	}
+
+	@Override
+	public void clear() {
+		if (this.size == 0) {
+			return;
+		}
+		for (int slot = 0; slot < this.slots; slot++) {
+			if ((this.flags[slot] & LIVE) != 0) {
+				this.release(this.rows[slot]);
+			}
+		}
+		this.rows = new Todo[0];
+		this.flags = new byte[0];
+		this.dueDates = new long[0];
+		this.tree = new int[1];
+		this.slots = 0;
+		this.size = 0;
+		this.modCount++;
+		this.owner.touch();
+	}
+
+	/**
+	 * Keep the slot of an item that is added to another list, until it is removed from this one
+	 *
+	 * @param todo the item
+	 */
+	void moved(Todo todo) {
+		int slot = todo.getRow();
+		if (slot < 0 || slot >= this.slots || this.rows[slot] != todo || (this.flags[slot] & LIVE) == 0) {
+			return;
+		}
+		if (this.moved == null) {
+			this.moved = new IdentityHashMap<>();
+		}
+		this.moved.put(todo, slot);
+	}
+
+	/**
+	 * Update the row of a item after its flags or due date changed
+	 *
+	 * @param todo the item
+	 */
+	void changed(Todo todo) {
+		int slot = todo.getRow();
+		if (todo.getParent() != this.owner || slot < 0 || slot >= this.slots || this.rows[slot] != todo || (this.flags[slot] & LIVE) == 0) {
+			return;
+		}
+		this.flags[slot] = flagsOf(todo);
+		this.dueDates[slot] = todo.getDueDateMillis();
+	}
+
+	/**
+	 * Count the items with the given flags
+	 *
+	 * @param mask  the flags to check
+	 * @param value the expected value of the checked flags
+	 * @return the number of matching items
+	 */
+	int count(byte mask, byte value) {
+		byte[] flags = this.flags;
+		int m = mask | LIVE;
+		int v = value | LIVE;
+		int count = 0;
+		for (int i = 0; i < this.slots; i++) {
+			if ((flags[i] & m) == v) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Count the open items that are past due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the number of items
+	 */
+	int countPastDue(long now) {
+		byte[] flags = this.flags;
+		long[] dueDates = this.dueDates;
+		int count = 0;
+		for (int i = 0; i < this.slots; i++) {
+			if ((flags[i] & (LIVE | DONE)) == LIVE && dueDates[i] != Todo.NO_DUE_DATE && dueDates[i] < now) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the open items that are past due
+	 *
+	 * @param now milliseconds since the epoch
+	 * @return the items in list order
+	 */
+	List<Todo> pastDue(long now) {
+		byte[] flags = this.flags;
+		long[] dueDates = this.dueDates;
+		List<Todo> result = new ArrayList<>();
+		for (int i = 0; i < this.slots; i++) {
+			if ((flags[i] & (LIVE | DONE)) == LIVE && dueDates[i] != Todo.NO_DUE_DATE && dueDates[i] < now) {
+				result.add(this.rows[i]);
+			}
+		}
+		return result;
+	}
+}
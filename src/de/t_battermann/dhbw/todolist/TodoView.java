@@ -0,0 +1,396 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.TransformationList;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Filtered and sorted view of the items of a TodoList, shown by the '#todos' ListView.
+ * <p>
+ * The shown items are kept in a treap (a randomized balanced search tree) that knows the size of its subtrees, so an
+ * item is found by its position, its position is found from its node, and an item is inserted or removed in
+ * O(log n). Every node is registered for its item, so a item whose flags changed is removed from its old position
+ * without comparing anything. An item whose properties changed is reported as update by the source list (see
+ * TrackedItems), the view removes and inserts just this item and reports it as update if its position didn’t change.
+ * Only changing the filter or the sort order rebuilds the view.
+ * <p>
+ * Items with the same sort key keep the order of the list: the view compares their rows in the TodoTable, so the
+ * source has to be a list of a TodoList.
+ */
+final class TodoView extends TransformationList<Todo, Todo> {
+	/**
+	 * Sort orders of the items
+	 */
+	enum Sort {
+		LIST("list order", (a, b) -> 0),
+		PRIO("prio first", (a, b) -> Boolean.compare(b.isPrio(), a.isPrio())),
+		DUE_DATE("due date", (a, b) -> a.hasDueDate() != b.hasDueDate() ? (a.hasDueDate() ? -1 : 1)
+				: Long.compare(a.getDueDateMillis(), b.getDueDateMillis()));
+
+		private final String label;
+		private final Comparator<Todo> comparator;
+
+		Sort(String label, Comparator<Todo> comparator) {
+			this.label = label;
+			this.comparator = comparator.thenComparingInt(Todo::getRow);
+		}
+
+		@Override
+		public String toString() {
+			return this.label;
+		}
+	}
+
+	private static class Node {
+		final Todo item;
+		final int priority;
+		Node left;
+		Node right;
+		Node parent;
+		int size = 1;
+
+		Node(Todo item, int priority) {
+			this.item = item;
+			this.priority = priority;
+		}
+	}
+
+	private final Random random = new Random();
+	private final Map<Todo, Node> nodes = new IdentityHashMap<>();
+	private Node root = null;
+	private Comparator<Todo> comparator;
+	private Predicate<Todo> predicate;
+
+	/**
+	 * Instantiates a new TodoView.
+	 *
+	 * @param items       the items of the TodoList
+	 * @param showDone    false to hide the done items
+	 * @param pastDueOnly true to show only the items that are past due
+	 * @param sort        the sort order
+	 */
+	TodoView(ObservableList<Todo> items, boolean showDone, boolean pastDueOnly, Sort sort) {
+		super(items);
+		this.predicate = filter(showDone, pastDueOnly);
+		this.comparator = sort.comparator;
+		this.rebuild();
+	}
+
+	private static Predicate<Todo> filter(boolean showDone, boolean pastDueOnly) {
+		// compared with the clock, an item that gets due is shown when the OverdueWatcher reports it as update
+		return todo -> (showDone || !todo.isDone()) && (!pastDueOnly || todo.pastDue());
+	}
+
+	private static int size(Node node) {
+		return node != null ? node.size : 0;
+	}
+
+	/**
+	 * Recompute the size of a node and link its children
+	 *
+	 * @param node the node
+	 * @return the node
+	 */
+	private static Node update(Node node) {
+		node.size = 1 + size(node.left) + size(node.right);
+		if (node.left != null) {
+			node.left.parent = node;
+		}
+		if (node.right != null) {
+			node.right.parent = node;
+		}
+		return node;
+	}
+
+	/**
+	 * Merge two trees
+	 *
+	 * @param a the tree with the first items
+	 * @param b the tree with the following items
+	 * @return the merged tree
+	 */
+	private static Node merge(Node a, Node b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			return update(a);
+		}
+		b.left = merge(a, b.left);
+		return update(b);
+	}
+
+	/**
+	 * Split a tree at a position, the parents of the returned roots aren’t cleared
+	 *
+	 * @param node  the tree
+	 * @param index the number of items of the first tree
+	 * @return the first and the second tree
+	 */
+	private static Node[] split(Node node, int index) {
+		if (node == null) {
+			return new Node[]{null, null};
+		}
+		if (index <= size(node.left)) {
+			Node[] parts = split(node.left, index);
+			node.left = parts[1];
+			parts[1] = update(node);
+			return parts;
+		}
+		Node[] parts = split(node.right, index - size(node.left) - 1);
+		node.right = parts[0];
+		parts[0] = update(node);
+		return parts;
+	}
+
+	/**
+	 * Get the position of a node
+	 *
+	 * @param node the node
+	 * @return the index of its item in the view
+	 */
+	private static int indexOf(Node node) {
+		int index = size(node.left);
+		for (Node n = node; n.parent != null; n = n.parent) {
+			if (n.parent.right == n) {
+				index += size(n.parent.left) + 1;
+			}
+		}
+		return index;
+	}
+
+	private void setRoot(Node root) {
+		this.root = root;
+		if (root != null) {
+			root.parent = null;
+		}
+	}
+
+	/**
+	 * Find the position an item is inserted at
+	 *
+	 * @param item the item
+	 * @return the number of shown items sorted before it
+	 */
+	private int insertionPoint(Todo item) {
+		int index = 0;
+		Node node = this.root;
+		while (node != null) {
+			if (this.comparator.compare(item, node.item) < 0) {
+				node = node.left;
+			} else {
+				index += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Show an item
+	 *
+	 * @param item the item
+	 * @return the index of the item
+	 */
+	private int insert(Todo item) {
+		int index = this.insertionPoint(item);
+		Node node = new Node(item, this.random.nextInt());
+		this.nodes.put(item, node);
+		Node[] parts = split(this.root, index);
+		this.setRoot(merge(merge(parts[0], node), parts[1]));
+		return index;
+	}
+
+	/**
+	 * Hide an item
+	 *
+	 * @param node the node of the item
+	 * @return the former index of the item
+	 */
+	private int remove(Node node) {
+		int index = indexOf(node);
+		this.nodes.remove(node.item);
+		Node[] parts = split(this.root, index);
+		Node[] rest = split(parts[1], 1);
+		this.setRoot(merge(parts[0], rest[1]));
+		return index;
+	}
+
+	/**
+	 * Filter and sort all items again
+	 */
+	private void rebuild() {
+		List<Todo> items = new ArrayList<>();
+		for (Todo item : this.getSource()) {
+			if (item != null && this.predicate.test(item)) {
+				items.add(item);
+			}
+		}
+		items.sort(this.comparator);
+		this.nodes.clear();
+		Node root = null;
+		for (Todo item : items) {
+			Node node = new Node(item, this.random.nextInt());
+			this.nodes.put(item, node);
+			root = merge(root, node);
+		}
+		this.setRoot(root);
+	}
+
+	/**
+	 * Rebuild the view and report all items as replaced
+	 */
+	private void refresh() {
+		List<Todo> old = new ArrayList<>(this);
+		this.rebuild();
+		this.beginChange();
+		if (!old.isEmpty()) {
+			this.nextRemove(0, old);
+		}
+		if (this.size() > 0) {
+			this.nextAdd(0, this.size());
+		}
+		this.endChange();
+	}
+
+	/**
+	 * Sets the filter.
+	 *
+	 * @param showDone    false to hide the done items
+	 * @param pastDueOnly true to show only the items that are past due
+	 */
+	void setFilter(boolean showDone, boolean pastDueOnly) {
+		this.predicate = filter(showDone, pastDueOnly);
+		this.refresh();
+	}
+
+	/**
+	 * Sets the sort order.
+	 *
+	 * @param sort the sort order
+	 */
+	void setSort(Sort sort) {
+		this.comparator = sort.comparator;
+		this.refresh();
+	}
+
+	/**
+	 * Move, show or hide an item after it changed
+	 *
+	 * @param item the item
+	 */
+	private void update(Todo item) {
+		if (item == null) {
+			return;
+		}
+		Node node = this.nodes.get(item);
+		int from = node != null ? this.remove(node) : -1;
+		int to = this.predicate.test(item) ? this.insert(item) : -1;
+		if (from >= 0 && from == to) {
+			this.nextUpdate(to);
+			return;
+		}
+		if (from >= 0) {
+			this.nextRemove(from, item);
+		}
+		if (to >= 0) {
+			this.nextAdd(to, to + 1);
+		}
+	}
+
+	@Override
+	protected void sourceChanged(ListChangeListener.Change<? extends Todo> c) {
+		this.beginChange();
+		while (c.next()) {
+			if (c.wasPermutated()) {
+				// only the list order changed, the view is rebuilt below
+				continue;
+			}
+			if (c.wasUpdated()) {
+				for (int i = c.getFrom(); i < c.getTo(); i++) {
+					this.update(c.getList().get(i));
+				}
+				continue;
+			}
+			for (Todo item : c.getRemoved()) {
+				Node node = item != null ? this.nodes.get(item) : null;
+				if (node != null) {
+					this.nextRemove(this.remove(node), item);
+				}
+			}
+			for (Todo item : c.getAddedSubList()) {
+				if (item != null && !this.nodes.containsKey(item) && this.predicate.test(item)) {
+					int index = this.insert(item);
+					this.nextAdd(index, index + 1);
+				}
+			}
+		}
+		this.endChange();
+		c.reset();
+		while (c.next()) {
+			if (c.wasPermutated()) {
+				this.refresh();
+				break;
+			}
+		}
+	}
+
+	@Override
+	public Todo get(int index) {
+		if (index < 0 || index >= this.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+		}
+		Node node = this.root;
+		while (true) {
+			int left = size(node.left);
+			if (index < left) {
+				node = node.left;
+			} else if (index == left) {
+				return node.item;
+			} else {
+				index -= left + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size(this.root);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		Node node = this.nodes.get(o);
+		return node != null ? indexOf(node) : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		// an item is shown only once
+		return this.indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return this.nodes.containsKey(o);
+	}
+
+	@Override
+	public int getSourceIndex(int index) {
+		return this.getSource().indexOf(this.get(index));
+	}
+
+	// abstract since JavaFX 9
+	public int getViewIndex(int index) {
+		Todo item = this.getSource().get(index);
+		return item != null ? this.indexOf(item) : -1;
+	}
+}
@@ -0,0 +1,119 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class of the model objects, keeps track of changes.
+ * <p>
+ * Every object has a revision that is taken from a global clock. A change of an object (or of its TodoLists/items)
+ * updates the revision of the object and of all its parents, so an unchanged revision means the whole subtree is
+ * unchanged. The export handlers use this to reuse the data they serialized before.
+ */
+public abstract class Tracked {
+	private static final AtomicLong clock = new AtomicLong();
+	private volatile long revision = clock.incrementAndGet();
+	private volatile Tracked parent = null;
+
+	/**
+	 * Gets uuid.
+	 *
+	 * @return the uuid
+	 */
+	public abstract UUID getUuid();
+
+	/**
+	 * Parse a uuid read from a XML or CSV file
+	 *
+	 * @param uuid the string representation, a new uuid is created if it is empty
+	 * @return the uuid
+	 * @throws InvalidDataException if the string isn’t a uuid
+	 */
+	static UUID parseUuid(String uuid) throws InvalidDataException {
+		if (uuid.isEmpty()) {
+			return UUID.randomUUID();
+		}
+		try {
+			return UUID.fromString(uuid);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidDataException("Invalid uuid '" + uuid + "'");
+		}
+	}
+
+	/**
+	 * Parse the uuid of a user read from a XML or CSV file
+	 * <p>
+	 * The uuid salts the password hash of the user, so it has to be given and has to be written exactly like the
+	 * parsed uuid is written again, else the user couldn’t log in any more.
+	 *
+	 * @param uuid the string representation
+	 * @return the uuid
+	 * @throws InvalidDataException if the string is empty or isn’t a uuid in canonical form
+	 */
+	static UUID parseUserUuid(String uuid) throws InvalidDataException {
+		if (uuid.isEmpty()) {
+			throw new InvalidDataException("Missing uuid of a user");
+		}
+		UUID parsed = parseUuid(uuid);
+		if (!parsed.toString().equals(uuid)) {
+			throw new InvalidDataException("Invalid uuid '" + uuid + "' of a user, it has to be in canonical form");
+		}
+		return parsed;
+	}
+
+	/**
+	 * Gets revision.
+	 *
+	 * @return the revision, changes whenever the object or one of its children changes
+	 */
+	public long getRevision() {
+		return this.revision;
+	}
+
+	/**
+	 * Restore the revision of a copied object
+	 *
+	 * @param revision the revision
+	 */
+	protected void setRevision(long revision) {
+		this.revision = revision;
+	}
+
+	/**
+	 * Mark the object and its parents as changed
+	 */
+	protected void touch() {
+		long revision = clock.incrementAndGet();
+		for (Tracked t = this; t != null; t = t.parent) {
+			t.revision = revision;
+		}
+	}
+
+	/**
+	 * Gets parent.
+	 *
+	 * @return the object containing this one
+	 */
+	Tracked getParent() {
+		return this.parent;
+	}
+
+	/**
+	 * Sets parent.
+	 *
+	 * @param parent the object containing this one
+	 */
+	void setParent(Tracked parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Gets model listener.
+	 *
+	 * @return the listener of the user containing this object or null
+	 */
+	ModelListener getModelListener() {
+		Tracked parent = this.parent;
+		return parent != null ? parent.getModelListener() : null;
+	}
+}
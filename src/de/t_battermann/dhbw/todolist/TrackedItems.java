@@ -0,0 +1,131 @@
+package de.t_battermann.dhbw.todolist;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ModifiableObservableListBase;
+import javafx.util.Callback;
+
+import java.util.List;
+
+/**
+ * Observable list of model objects, backed by the TodoTable of a TodoList, the TodoLists of a user or another list.
+ * <p>
+ * Like a list created with an extractor it reports a changed property of an element as an update of the element. The
+ * list created by {@code FXCollections.observableList(list, extractor)} adds a listener per element and scans the
+ * whole list to find the index of the changed element, and if the backing list isn’t RandomAccess, it never adds the
+ * listener to elements added later nor removes it from removed ones. This list adds one listener to all properties,
+ * gets the element from the bean of the property and asks the backing list for its index, which is O(log n) for a
+ * TodoTable. Changes of the backing list have to go through this list once it exists, see
+ * {@link TodoList#getObservableTodos()} and {@link User#getObservableTodoLists()}.
+ * <p>
+ * The properties of the elements hold the listener and with it this list. The list of a TodoList or a user is only
+ * referenced by its owner and the elements, so it is collected with them; never clear it, that would delete the
+ * elements. A list backed by another list, like the agenda, shows elements that outlive it: clear it before it is
+ * dropped, which only empties the backing list and detaches the listener from the elements.
+ *
+ * @param <E> the type of the elements
+ */
+final class TrackedItems<E extends Tracked> extends ModifiableObservableListBase<E> {
+	private final List<E> elements;
+	private final Callback<E, Observable[]> extractor;
+	private final InvalidationListener listener = this::propertyChanged;
+
+	/**
+	 * Instantiates a new TrackedItems list.
+	 *
+	 * @param elements  the elements
+	 * @param extractor the properties of an element that are reported as updates
+	 */
+	TrackedItems(List<E> elements, Callback<E, Observable[]> extractor) {
+		this.elements = elements;
+		this.extractor = extractor;
+		for (E element : elements) {
+			this.attach(element);
+		}
+	}
+
+	private void attach(E element) {
+		if (element != null) {
+			for (Observable o : this.extractor.call(element)) {
+				o.addListener(this.listener);
+			}
+		}
+	}
+
+	private void detach(E element) {
+		if (element != null) {
+			for (Observable o : this.extractor.call(element)) {
+				o.removeListener(this.listener);
+			}
+		}
+	}
+
+	/**
+	 * Report a changed property as update of its element
+	 *
+	 * @param o the property
+	 */
+	private void propertyChanged(Observable o) {
+		if (o instanceof ObservableValue) {
+			// validate the property, an invalid property doesn’t notify its listeners again
+			((ObservableValue<?>) o).getValue();
+		}
+		if (!(o instanceof ReadOnlyProperty) || !(((ReadOnlyProperty<?>) o).getBean() instanceof Tracked)) {
+			return;
+		}
+		int index = this.elements.indexOf(((ReadOnlyProperty<?>) o).getBean());
+		if (index >= 0) {
+			this.beginChange();
+			this.nextUpdate(index);
+			this.endChange();
+		}
+	}
+
+	@Override
+	public E get(int index) {
+		return this.elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		return this.elements.size();
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		return this.elements.indexOf(o);
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return this.elements.lastIndexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return this.elements.contains(o);
+	}
+
+	@Override
+	protected void doAdd(int index, E element) {
+		this.elements.add(index, element);
+		this.attach(element);
+	}
+
+	@Override
+	protected E doSet(int index, E element) {
+		E old = this.elements.set(index, element);
+		this.detach(old);
+		this.attach(element);
+		return old;
+	}
+
+	@Override
+	protected E doRemove(int index) {
+		E old = this.elements.remove(index);
+		this.detach(old);
+		return old;
+	}
+}
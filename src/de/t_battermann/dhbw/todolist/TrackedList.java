@@ -0,0 +1,129 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.AbstractSequentialList;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * List of model objects that marks its owner as changed when it is modified.
+ * <p>
+ * All modifications (including the ones of the ObservableLists wrapping it) go through the ListIterator, which sets
+ * the owner as parent of the added elements and touches the owner.
+ *
+ * @param <E> the type of the elements
+ */
+class TrackedList<E extends Tracked> extends AbstractSequentialList<E> {
+	private final LinkedList<E> list = new LinkedList<>();
+	private final Tracked owner;
+
+	/**
+	 * Instantiates a new TrackedList.
+	 *
+	 * @param owner the object containing the list
+	 */
+	TrackedList(Tracked owner) {
+		this.owner = owner;
+	}
+
+	private void adopt(E element) {
+		if (element != null) {
+			element.setParent(this.owner);
+			this.added(element);
+		}
+	}
+
+	private void release(E element) {
+		if (element == null) {
+			return;
+		}
+		// a moved element already belongs to another list
+		if (element.getParent() == this.owner) {
+			element.setParent(null);
+		}
+		this.removed(element);
+	}
+
+	/**
+	 * Called after a element was added to the list
+	 *
+	 * @param element the element
+	 */
+	protected void added(E element) {
+	}
+
+	/**
+	 * Called after a element was removed from the list
+	 *
+	 * @param element the element
+	 */
+	protected void removed(E element) {
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		ListIterator<E> it = this.list.listIterator(index);
+		return new ListIterator<E>() {
+			private E last = null;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return this.last = it.next();
+			}
+
+			@Override
+			public boolean hasPrevious() {
+				return it.hasPrevious();
+			}
+
+			@Override
+			public E previous() {
+				return this.last = it.previous();
+			}
+
+			@Override
+			public int nextIndex() {
+				return it.nextIndex();
+			}
+
+			@Override
+			public int previousIndex() {
+				return it.previousIndex();
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				release(this.last);
+				this.last = null;
+				owner.touch();
+			}
+
+			@Override
+			public void set(E e) {
+				it.set(e);
+				release(this.last);
+				adopt(e);
+				this.last = e;
+				owner.touch();
+			}
+
+			@Override
+			public void add(E e) {
+				it.add(e);
+				adopt(e);
+				this.last = null;
+				owner.touch();
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.list.size();
+	}
+}
@@ -1,21 +1,60 @@
 package de.t_battermann.dhbw.todolist;
 
+import javafx.collections.ObservableList;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.validator.routines.EmailValidator;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * This class contains all the users data.
  */
-public class User {
+public class User extends Tracked {
 	private String username;
 	private String email;
 	private String password;
-	private String uuid = UUID.randomUUID().toString();
-	private List<TodoList> todoLists;
+	private UUID uuid = UUID.randomUUID();
+	private final TodoListIndex todoLists = new TodoListIndex(this);
+	private volatile TodoListLoader todoListLoader = null;
+	// created when the user first logs in, kept so its listener is added to the TodoLists only once
+	private TrackedItems<TodoList> observableTodoLists = null;
+	private ModelListener[] modelListeners = new ModelListener[0];
+	// notifies all modelListeners
+	private ModelListener modelListener = null;
+
+	/**
+	 * Loads the TodoLists of a user that was restored without them
+	 */
+	interface TodoListLoader {
+		/**
+		 * Load the TodoLists.
+		 *
+		 * @return the TodoLists of the user
+		 * @throws InvalidDataException if the stored data is invalid
+		 */
+		List<TodoList> load() throws InvalidDataException;
+
+		/**
+		 * Decode the TodoLists in advance, so load() only has to return them. Can be called by any thread, the
+		 * TodoLists aren’t attached to the user until they are loaded.
+		 *
+		 * @return the number of TodoLists and items decoded, 0 if there was nothing to do
+		 * @throws InvalidDataException if the stored data is invalid
+		 */
+		default int prefetch() throws InvalidDataException {
+			return 0;
+		}
+
+		/**
+		 * Get a loader for a copy of the user, it decodes the TodoLists again instead of taking the ones decoded in
+		 * advance.
+		 *
+		 * @return the loader
+		 */
+		default TodoListLoader copy() {
+			return this;
+		}
+	}
 
 	/**
 	 * Instantiates a new User.
@@ -28,7 +67,6 @@ public class User {
 		this.password = hashPassword(password);
 		this.email = "";
 
-		todoLists = new LinkedList<>();
 		TodoList tmp = new TodoList("Default", false);
 		todoLists.add(tmp);
 	}
@@ -42,12 +80,26 @@ public class User {
 	 * @param hashedPassword the hashed password
 	 * @param email          the email
 	 */
-	protected User(String uuid, String username, String hashedPassword, String email) {
+	protected User(UUID uuid, String username, String hashedPassword, String email) {
 		this.username = username;
 		this.uuid = uuid;
 		this.password = hashedPassword;
 		this.email = email;
-		this.todoLists = new LinkedList<>();
+	}
+
+	/**
+	 * Instantiates a new User whose TodoLists are loaded on first access.
+	 * Used to restore saved data without materializing all users
+	 *
+	 * @param uuid           the uuid
+	 * @param username       the username
+	 * @param hashedPassword the hashed password
+	 * @param email          the email
+	 * @param todoListLoader loads the TodoLists when they are needed
+	 */
+	protected User(UUID uuid, String username, String hashedPassword, String email, TodoListLoader todoListLoader) {
+		this(uuid, username, hashedPassword, email);
+		this.todoListLoader = todoListLoader;
 	}
 
 	/**
@@ -93,17 +145,54 @@ public class User {
 	 */
 	public void setPassword(String password) {
 		this.password = hashPassword(password);
+		this.touch();
 	}
 
 	/**
-	 * Gets uuid.
+	 * Restore the hashed password
 	 *
-	 * @return the uuid
+	 * @param hashedPassword the hashed password
 	 */
-	public String getUuid() {
+	protected void setHashedPassword(String hashedPassword) {
+		this.password = hashedPassword;
+		this.touch();
+	}
+
+	@Override
+	public UUID getUuid() {
 		return this.uuid;
 	}
 
+	@Override
+	ModelListener getModelListener() {
+		return this.modelListener;
+	}
+
+	/**
+	 * Add a model listener.
+	 *
+	 * @param modelListener gets notified when TodoLists or items are added, removed or changed
+	 */
+	void addModelListener(ModelListener modelListener) {
+		ModelListener[] listeners = Arrays.copyOf(this.modelListeners, this.modelListeners.length + 1);
+		listeners[listeners.length - 1] = modelListener;
+		this.modelListeners = listeners;
+		this.modelListener = ModelListener.all(listeners);
+	}
+
+	/**
+	 * Remove a model listener.
+	 *
+	 * @param modelListener the listener
+	 */
+	void removeModelListener(ModelListener modelListener) {
+		List<ModelListener> listeners = new ArrayList<>(Arrays.asList(this.modelListeners));
+		if (listeners.remove(modelListener)) {
+			this.modelListeners = listeners.toArray(new ModelListener[0]);
+			this.modelListener = ModelListener.all(this.modelListeners);
+		}
+	}
+
 	/**
 	 * Gets email.
 	 *
@@ -120,11 +209,44 @@ public class User {
 	 * @return the todo list
 	 */
 	public TodoList getTodoList(String name) {
-		for (TodoList l : todoLists)
-			if (l.getName().equals(name))
-				return l;
-		ErrorPrinter.printDebug("TodoList not found: " + name);
-		return null;
+		this.getTodoLists();
+		TodoList list = this.todoLists.getByName(name);
+		if (list == null) {
+			ErrorPrinter.printDebug(() -> "getTodoList > TodoList not found: " + name);
+		}
+		return list;
+	}
+
+	/**
+	 * Gets todo list by its uuid.
+	 *
+	 * @param uuid the uuid
+	 * @return the todo list or null
+	 */
+	public TodoList getTodoListByUuid(UUID uuid) {
+		this.getTodoLists();
+		return this.todoLists.getByUuid(uuid);
+	}
+
+	/**
+	 * Check if a todo list with the given name exists.
+	 *
+	 * @param name the name
+	 * @return true if the name is taken
+	 */
+	public boolean hasTodoList(String name) {
+		this.getTodoLists();
+		return this.todoLists.getByName(name) != null;
+	}
+
+	/**
+	 * Update the index after a todo list was renamed
+	 *
+	 * @param list    the todo list
+	 * @param oldName the previous name
+	 */
+	void todoListRenamed(TodoList list, String oldName) {
+		this.todoLists.renamed(list, oldName);
 	}
 
 	/**
@@ -133,9 +255,60 @@ public class User {
 	 * @return the todo lists
 	 */
 	public List<TodoList> getTodoLists() {
+		if (this.todoListLoader != null) {
+			this.loadTodoLists();
+		}
 		return todoLists;
 	}
 
+	/**
+	 * Gets the todo lists as observable list, a rename or a changed overdue flag is reported as update.
+	 * Once it exists, all changes of the lists are made through it.
+	 *
+	 * @return the observable todo lists
+	 */
+	public ObservableList<TodoList> getObservableTodoLists() {
+		if (this.observableTodoLists == null) {
+			this.observableTodoLists = new TrackedItems<>(this.getTodoLists(), TodoList::observables);
+		}
+		return this.observableTodoLists;
+	}
+
+	/**
+	 * Are the TodoLists loaded?
+	 *
+	 * @return false if the TodoLists haven’t been accessed since the user was restored
+	 */
+	protected boolean isLoaded() {
+		return this.todoListLoader == null;
+	}
+
+	/**
+	 * Gets the loader of the TodoLists.
+	 *
+	 * @return the loader or null if the TodoLists are already loaded
+	 */
+	protected TodoListLoader getTodoListLoader() {
+		return this.todoListLoader;
+	}
+
+	/**
+	 * Materialize the TodoLists using the loader
+	 */
+	private synchronized void loadTodoLists() {
+		if (this.todoListLoader == null) {
+			return;
+		}
+		try {
+			this.todoLists.addAll(this.todoListLoader.load());
+		} catch (InvalidDataException e) {
+			ErrorPrinter.printError("loadTodoLists > Couldn’t load the TodoLists of '" + this.username + "': " + e.getMessage());
+			throw new IllegalStateException("Couldn’t load the TodoLists of '" + this.username + "'", e);
+		}
+		this.todoListLoader = null;
+		ErrorPrinter.printDebug(() -> "loadTodoLists > Loaded " + this.todoLists.size() + " TodoLists of '" + this.username + "'");
+	}
+
 	/**
 	 * Check login data.
 	 *
@@ -143,10 +316,43 @@ public class User {
 	 * @return the boolean
 	 */
 	public boolean checkLoginData(String password) {
-		ErrorPrinter.printDebug("checkLoginData > " + this.password + " <> " + this.hashPassword(password));
 		return this.hashPassword(password).equals(this.password);
 	}
 
+	/**
+	 * Copy the user and its TodoLists, the copies have the same uuids and revisions.
+	 * TodoLists that aren’t loaded yet aren’t loaded by the copy either, it gets a copy of the loader.
+	 *
+	 * @return the copy
+	 */
+	protected User copy() {
+		return this.copy(Collections.emptyMap());
+	}
+
+	/**
+	 * Copy the user and its changed TodoLists, the copies have the same uuids and revisions.
+	 * TodoLists that aren’t loaded yet aren’t loaded by the copy either, it gets a copy of the loader.
+	 *
+	 * @param unchanged the revisions of TodoLists that don’t have to be copied, by uuid
+	 * @return the copy, unchanged TodoLists are replaced by stubs (see {@link TodoList#stub()})
+	 */
+	protected User copy(Map<UUID, Long> unchanged) {
+		TodoListLoader loader = this.todoListLoader;
+		if (loader != null) {
+			User copy = new User(this.uuid, this.username, this.password, this.email, loader.copy());
+			copy.setRevision(this.getRevision());
+			return copy;
+		}
+		long revision = this.getRevision();
+		User copy = new User(this.uuid, this.username, this.password, this.email);
+		for (TodoList list : this.todoLists) {
+			Long copied = unchanged.get(list.getUuid());
+			copy.todoLists.add(copied != null && copied == list.getRevision() ? list.stub() : list.copy());
+		}
+		copy.setRevision(revision);
+		return copy;
+	}
+
 	@Override
 	public String toString() {
 		return "Username: " + username + "\n"
@@ -160,11 +366,11 @@ public class User {
 	 * @return false if a list with the given name already exists
 	 */
 	public boolean addTodoList(TodoList todoList) {
-		if (this.getTodoList(todoList.getName()) == null) {
-			this.todoLists.add(todoList);
+		if (!this.hasTodoList(todoList.getName())) {
+			(this.observableTodoLists != null ? this.observableTodoLists : this.getTodoLists()).add(todoList);
 			return true;
 		}
-		ErrorPrinter.printDebug("addTodoList > A TodoList named '" + todoList.getName() + "' already exists!");
+		ErrorPrinter.printDebug(() -> "addTodoList > A TodoList named '" + todoList.getName() + "' already exists!");
 		return false;
 	}
 
@@ -177,9 +383,10 @@ public class User {
 	public boolean setEmail(String email) {
 		if (User.checkEmail(email)) {
 			this.email = email;
+			this.touch();
 			return true;
 		}
-		ErrorPrinter.printDebug("setEmail > Invalid eMail: '" + email + "'");
+		ErrorPrinter.printDebug(() -> "setEmail > Invalid eMail: '" + email + "'");
 		return false;
 	}
 
@@ -0,0 +1,148 @@
+package de.t_battermann.dhbw.todolist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Index of all users, TodoLists and items by their uuids.
+ * <p>
+ * The index registers itself as ModelListener of the users, so it follows TodoLists and items being added, removed
+ * and moved. The parents of an object are available with {@link Tracked#getParent()}. TodoLists of users that are
+ * loaded lazily are indexed when they are loaded. A uuid that is used twice is reported and the first object keeps
+ * it.
+ */
+final class UuidIndex implements ModelListener {
+	private final Map<UUID, Tracked> objects = new HashMap<>();
+	private int duplicates = 0;
+
+	/**
+	 * Instantiates a new UuidIndex.
+	 *
+	 * @param users the users to index
+	 */
+	UuidIndex(Map<String, User> users) {
+		for (User user : users.values()) {
+			this.addUser(user);
+		}
+		if (this.duplicates > 0) {
+			ErrorPrinter.printWarning("UuidIndex > Found " + this.duplicates + " duplicate uuids");
+		}
+	}
+
+	private void put(Tracked object) {
+		Tracked old = this.objects.putIfAbsent(object.getUuid(), object);
+		if (old != null && old != object) {
+			this.duplicates++;
+			ErrorPrinter.printWarning("UuidIndex > Duplicate uuid '" + object.getUuid() + "' of '" + object + "' and '" + old + "'");
+		}
+	}
+
+	private void remove(Tracked object) {
+		this.objects.remove(object.getUuid(), object);
+	}
+
+	/**
+	 * Add a user and its loaded TodoLists
+	 *
+	 * @param user the user
+	 */
+	void addUser(User user) {
+		this.put(user);
+		user.addModelListener(this);
+		if (user.isLoaded()) {
+			for (TodoList list : user.getTodoLists()) {
+				this.added(list);
+			}
+		}
+	}
+
+	/**
+	 * Remove a user and its TodoLists
+	 *
+	 * @param user the user
+	 */
+	void removeUser(User user) {
+		user.removeModelListener(this);
+		this.remove(user);
+		if (user.isLoaded()) {
+			for (TodoList list : user.getTodoLists()) {
+				this.remove(list);
+				for (Todo todo : list.getTodos()) {
+					this.remove(todo);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void added(Tracked object) {
+		this.put(object);
+		if (object instanceof TodoList) {
+			for (Todo todo : ((TodoList) object).getTodos()) {
+				this.put(todo);
+			}
+		}
+	}
+
+	@Override
+	public void removed(Tracked object) {
+		// a moved object was already added to its new parent
+		if (object.getParent() != null) {
+			return;
+		}
+		this.remove(object);
+		if (object instanceof TodoList) {
+			for (Todo todo : ((TodoList) object).getTodos()) {
+				this.remove(todo);
+			}
+		}
+	}
+
+	@Override
+	public void changed(Todo todo) {
+		// the uuid doesn’t change
+	}
+
+	/**
+	 * Gets a user by its uuid.
+	 *
+	 * @param uuid the uuid
+	 * @return the user or null
+	 */
+	User getUser(UUID uuid) {
+		Tracked object = this.objects.get(uuid);
+		return object instanceof User ? (User) object : null;
+	}
+
+	/**
+	 * Gets a TodoList by its uuid.
+	 *
+	 * @param uuid the uuid
+	 * @return the TodoList or null
+	 */
+	TodoList getTodoList(UUID uuid) {
+		Tracked object = this.objects.get(uuid);
+		return object instanceof TodoList ? (TodoList) object : null;
+	}
+
+	/**
+	 * Gets an item by its uuid.
+	 *
+	 * @param uuid the uuid
+	 * @return the item or null
+	 */
+	Todo getTodo(UUID uuid) {
+		Tracked object = this.objects.get(uuid);
+		return object instanceof Todo ? (Todo) object : null;
+	}
+
+	/**
+	 * Gets duplicates.
+	 *
+	 * @return the number of uuids that were used by more than one object
+	 */
+	int getDuplicates() {
+		return this.duplicates;
+	}
+}
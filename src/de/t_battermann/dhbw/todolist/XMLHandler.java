@@ -1,201 +1,400 @@
 package de.t_battermann.dhbw.todolist;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
 import java.nio.charset.Charset;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.UUID;
 
 /**
  * This class implement the ExportHandler interface. It converts the data to XML and vice versa.
+ * <p>
+ * A instance keeps the encoded users of its last export, use one instance per file and thread.
  */
 public class XMLHandler implements ExportHandler {
+	private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+	private static final byte[] ROOT_START = "<todolistapp>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ROOT_END = "</todolistapp>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] EMPTY_ROOT = "<todolistapp/>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] USER_END = "</user>".getBytes(StandardCharsets.UTF_8);
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private final FragmentCache<byte[]> cache = new FragmentCache<>();
+
 	/**
-	 * Convert a map containing the users to a DOMSource containing XML
+	 * Write a string as character data
+	 * <p>
+	 * Control characters and characters outside the BMP are written as character references,
+	 * the same way the Transformer used to write them.
 	 *
-	 * @param users The users map
-	 * @return DOMSource containing XML
+	 * @param writer The writer
+	 * @param text   The text to be written
+	 * @throws XMLStreamException
 	 */
-	private DOMSource doExport(Map<String, User> users) {
-		try {
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-
-			Document doc = docBuilder.newDocument();
-			Element rootElement = doc.createElement("todolistapp");
-			doc.appendChild(rootElement);
-
-			for (User userEntry : users.values()) {
-				Element user = doc.createElement("user");
-
-				Element username = doc.createElement("username");
-				username.appendChild(doc.createTextNode(userEntry.getUsername()));
-				user.appendChild(username);
-
-				Element password = doc.createElement("password");
-				password.appendChild(doc.createTextNode(userEntry.getPassword()));
-				user.appendChild(password);
-
-				Element password_salt = doc.createElement("uuid");
-				password_salt.appendChild(doc.createTextNode(userEntry.getUuid()));
-				user.appendChild(password_salt);
-
-				Element email = doc.createElement("email");
-				email.appendChild(doc.createTextNode(userEntry.getEmail()));
-				user.appendChild(email);
-
-				for (TodoList todoListEntry : userEntry.getTodoLists()) {
-					Element list = doc.createElement("TodoList");
-					list.setAttribute("changeable", todoListEntry.isChangeable() ? "true" : "false");
-
-					Element title = doc.createElement("name");
-					title.appendChild(doc.createTextNode(todoListEntry.getName()));
-					list.appendChild(title);
-
-					Element uuid = doc.createElement("uuid");
-					uuid.appendChild(doc.createTextNode(todoListEntry.getUuid()));
-					list.appendChild(uuid);
-
-					for (Todo entry : todoListEntry.getTodos()) {
-						SimpleDateFormat format = new SimpleDateFormat();
-						format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
-						Element todo = doc.createElement("item");
-						todo.setAttribute("prio", entry.isPrio() ? "true" : "false");
-						todo.setAttribute("done", entry.isDone() ? "true" : "false");
+	private void writeText(XMLStreamWriter writer, String text) throws XMLStreamException {
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			int codePoint;
+			if ((c < 0x20 && c != '\t' && c != '\n') || (c >= 0x7f && c <= 0x9f)) {
+				codePoint = c;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+			} else {
+				continue;
+			}
+			if (i > start) {
+				writer.writeCharacters(text.substring(start, i));
+			}
+			writer.writeEntityRef("#" + codePoint);
+			i += Character.charCount(codePoint) - 1;
+			start = i + 1;
+		}
+		if (start == 0) {
+			writer.writeCharacters(text);
+		} else if (start < length) {
+			writer.writeCharacters(text.substring(start));
+		}
+	}
 
-						Element todoTitle = doc.createElement("title");
-						todoTitle.appendChild(doc.createTextNode(entry.getTitle()));
-						todo.appendChild(todoTitle);
+	/**
+	 * Write a element containing only text
+	 *
+	 * @param writer The writer
+	 * @param name   The elements name
+	 * @param text   The elements content
+	 * @throws XMLStreamException
+	 */
+	private void writeTextElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+		if (text == null || text.isEmpty()) {
+			writer.writeEmptyElement(name);
+			return;
+		}
+		writer.writeStartElement(name);
+		this.writeText(writer, text);
+		writer.writeEndElement();
+	}
 
-						Element todoUuid = doc.createElement("uuid");
-						todoUuid.appendChild(doc.createTextNode(entry.getUuid()));
-						todo.appendChild(todoUuid);
+	/**
+	 * Encode a TodoList
+	 *
+	 * @param list   The TodoList
+	 * @param buffer Buffer used for the encoding
+	 * @return The TodoList element
+	 * @throws XMLStreamException
+	 */
+	private byte[] encodeTodoList(TodoList list, ByteArrayOutputStream buffer) throws XMLStreamException {
+		buffer.reset();
+		XMLStreamWriter writer = this.outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+		writer.writeStartElement("TodoList");
+		writer.writeAttribute("changeable", list.isChangeable() ? "true" : "false");
+		this.writeTextElement(writer, "name", list.getName());
+		this.writeTextElement(writer, "uuid", list.getUuid().toString());
+		for (Todo entry : list.getTodos()) {
+			writer.writeStartElement("item");
+			writer.writeAttribute("done", entry.isDone() ? "true" : "false");
+			writer.writeAttribute("prio", entry.isPrio() ? "true" : "false");
+			this.writeTextElement(writer, "title", entry.getTitle());
+			this.writeTextElement(writer, "uuid", entry.getUuid().toString());
+			this.writeTextElement(writer, "comment", entry.getComment());
+			if (entry.hasDueDate()) {
+				this.writeTextElement(writer, "duedate", DateCodec.format(entry.getDueDateMillis()));
+			}
+			writer.writeEndElement();
+		} // for todos
+		writer.writeEndElement();
+		writer.close();
+		return buffer.toByteArray();
+	}
 
-						Element comment = doc.createElement("comment");
-						comment.appendChild(doc.createTextNode(entry.getComment()));
-						todo.appendChild(comment);
+	/**
+	 * Encode a user, unchanged TodoLists are taken from the cache
+	 *
+	 * @param user       The user
+	 * @param buffer     Buffer used for the user
+	 * @param listBuffer Buffer used for the TodoLists
+	 * @return The user element
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	private byte[] encodeUser(User user, ByteArrayOutputStream buffer, ByteArrayOutputStream listBuffer) throws XMLStreamException, IOException {
+		// load the TodoLists first, loading changes the revision
+		List<TodoList> lists = user.getTodoLists();
+		long revision = user.getRevision();
+		buffer.reset();
+		XMLStreamWriter writer = this.outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+		writer.writeStartElement("user");
+		this.writeTextElement(writer, "username", user.getUsername());
+		this.writeTextElement(writer, "password", user.getPassword());
+		this.writeTextElement(writer, "uuid", user.getUuid().toString());
+		this.writeTextElement(writer, "email", user.getEmail());
+		// close a pending empty element before the TodoLists are appended to the buffer
+		writer.writeCharacters("");
+		writer.flush();
+		List<UUID> children = new ArrayList<>();
+		for (TodoList list : lists) {
+			long listRevision = list.getRevision();
+			byte[] data = this.cache.get(list.getUuid(), listRevision);
+			if (data == null) {
+				data = this.encodeTodoList(list, listBuffer);
+				this.cache.put(list.getUuid(), listRevision, data);
+			}
+			buffer.write(data);
+			children.add(list.getUuid());
+		} // for todoLists
+		buffer.write(USER_END);
+		byte[] data = buffer.toByteArray();
+		this.cache.put(user.getUuid(), revision, data, children);
+		return data;
+	}
 
-						if (entry.getDueDate() != null) {
-							Element duedate = doc.createElement("duedate");
-							duedate.appendChild(doc.createTextNode(format.format(entry.getDueDate().getTime())));
-							todo.appendChild(duedate);
-						} // if duedate
-						list.appendChild(todo);
-					} // for todos
-					user.appendChild(list);
-				} // for todoLists
-				rootElement.appendChild(user);
+	/**
+	 * Write the users as XML to a stream
+	 * <p>
+	 * The output is the same as the one of an identity Transformer. Users and TodoLists that didn’t change since the
+	 * previous export of this handler are copied from the cache, only the changed ones are encoded again.
+	 *
+	 * @param users  The users map
+	 * @param stream The stream the XML is written to
+	 * @throws IOException
+	 */
+	private void doExport(Map<String, User> users, OutputStream stream) throws IOException {
+		stream.write(XML_DECLARATION.getBytes(StandardCharsets.UTF_8));
+		if (users.isEmpty()) {
+			stream.write(EMPTY_ROOT);
+			return;
+		}
+		stream.write(ROOT_START);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		ByteArrayOutputStream listBuffer = new ByteArrayOutputStream();
+		this.cache.begin();
+		try {
+			for (User userEntry : users.values()) {
+				byte[] data = this.cache.get(userEntry.getUuid(), userEntry.getRevision());
+				if (data == null) {
+					data = this.encodeUser(userEntry, buffer, listBuffer);
+				}
+				stream.write(data);
 			} // for users
-
-			return new DOMSource(doc);
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-			return null;
+		} catch (XMLStreamException e) {
+			throw new IOException("Couldn’t write XML: " + e.getMessage(), e);
 		}
+		stream.write(ROOT_END);
+		this.cache.commit();
+		ErrorPrinter.printDebug(() -> "doExport > Copied " + this.cache.getHits() + " and encoded " + this.cache.getMisses() + " users/TodoLists");
 	}
 
-	public void exportToFile(Map<String, User> users, File file) {
-		try {
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = this.doExport(users);
-			StreamResult result = new StreamResult(file);
-			transformer.transform(source, result);
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		}
+	/**
+	 * Export to file.
+	 * <p>
+	 * The file is replaced only after the data was written completely, see {@link ExportHandler#writeFile}.
+	 *
+	 * @param users The users map
+	 * @param file  The file the data should be saved to
+	 * @throws IOException
+	 */
+	public void exportToFile(Map<String, User> users, File file) throws IOException {
+		ExportHandler.writeFile(file, stream -> this.doExport(users, stream));
 	}
 
 	public String exportToString(Map<String, User> users) {
 		try {
-			StringWriter sw = new StringWriter();
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = this.doExport(users);
-			transformer.transform(source, new StreamResult(sw));
-			return sw.toString();
-		} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
-			return "";
-		} catch (TransformerException e) {
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			this.doExport(users, stream);
+			return stream.toString("UTF-8");
+		} catch (IOException e) {
 			e.printStackTrace();
 			return "";
 		}
 	}
 
 	/**
-	 * Get a string-element from a node
+	 * Parse a date string
 	 *
-	 * @param node The node to be searched in
-	 * @param name The elements name
-	 * @return the desired string or empty string if not found
+	 * @param date The string containing the date
+	 * @return Either the date or Todo.NO_DUE_DATE if it couldn’t be parsed
 	 */
-	private String elementGetString(Element node, String name) {
-		NodeList nodes = node.getElementsByTagName(name);
-		if (nodes.getLength() >= 1) {
-			return nodes.item(0).getTextContent();
+	private long parseDate(String date) {
+		try {
+			return DateCodec.parse(date);
+		} catch (DateTimeParseException e) {
+			e.printStackTrace();
 		}
-		return "";
+		return Todo.NO_DUE_DATE;
 	}
 
 	/**
-	 * Get a boolean value from a attribute
+	 * Get a boolean value from a attribute of the current element
 	 *
-	 * @param node         The node to be searched in
+	 * @param reader       The reader positioned at a start element
 	 * @param name         The attributes name
 	 * @param defaultValue if the attribute is not set use this value
 	 * @return either the value of the attribute or the default value if attribute not found
 	 */
-	private boolean elementGetBool(Element node, String name, boolean defaultValue) {
-		if (node.hasAttribute(name)) {
-			return node.getAttribute(name).compareTo("true") == 0;
+	private boolean attributeGetBool(XMLStreamReader reader, String name, boolean defaultValue) {
+		String value = reader.getAttributeValue(null, name);
+		if (value != null) {
+			return value.compareTo("true") == 0;
 		}
 		return defaultValue;
 	}
 
 	/**
-	 * Get a date from a element
+	 * Skip the current element including all its children
+	 *
+	 * @param reader The reader positioned at a start element
+	 * @throws XMLStreamException
+	 */
+	private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Read a todo item, the reader has to be positioned at the start of a 'item' element
 	 *
-	 * @param node The node to be searched in
-	 * @param name The elements name
-	 * @return Either the date (if found) or null
+	 * @param reader The reader
+	 * @param pool   Deduplicates the texts
+	 * @param count  Counts the records
+	 * @return The todo item
+	 * @throws XMLStreamException
+	 * @throws InvalidDataException
 	 */
-	private Calendar elementGetDate(Element node, String name) {
-		SimpleDateFormat format = new SimpleDateFormat();
-		format.applyPattern("yyyyMMdd'T'HH:mm:ssZ");
-		NodeList nodes = node.getElementsByTagName(name);
-		if (nodes.getLength() >= 1) {
-			try {
-				Calendar r = new GregorianCalendar();
-				r.setTime(format.parse(nodes.item(0).getTextContent()));
-				return r;
-			} catch (ParseException e) {
-				e.printStackTrace();
+	private Todo readTodo(XMLStreamReader reader, StringPool pool, ImportCounter count) throws XMLStreamException, InvalidDataException {
+		boolean done = this.attributeGetBool(reader, "done", false);
+		boolean prio = this.attributeGetBool(reader, "prio", false);
+		String uuid = "";
+		String title = "";
+		String comment = "";
+		long dueDate = Todo.NO_DUE_DATE;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+				case "uuid":
+					uuid = reader.getElementText();
+					break;
+				case "title":
+					title = pool.get(reader.getElementText());
+					break;
+				case "comment":
+					comment = pool.get(reader.getElementText());
+					break;
+				case "duedate":
+					dueDate = this.parseDate(reader.getElementText());
+					break;
+				default:
+					this.skipElement(reader);
 			}
 		}
-		return null;
+		count.record();
+		return new Todo(Tracked.parseUuid(uuid), title, comment, dueDate, done, prio);
+	}
+
+	/**
+	 * Read a TodoList, the reader has to be positioned at the start of a 'TodoList' element
+	 *
+	 * @param reader The reader
+	 * @param pool   Deduplicates the texts
+	 * @param count  Counts the records
+	 * @return The TodoList containing all its items
+	 * @throws XMLStreamException
+	 * @throws InvalidDataException
+	 */
+	private TodoList readTodoList(XMLStreamReader reader, StringPool pool, ImportCounter count) throws XMLStreamException, InvalidDataException {
+		boolean changeable = this.attributeGetBool(reader, "changeable", true);
+		String uuid = "";
+		String name = "";
+		List<Todo> todos = new LinkedList<>();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+				case "uuid":
+					uuid = reader.getElementText();
+					break;
+				case "name":
+					name = pool.get(reader.getElementText());
+					break;
+				case "item":
+					todos.add(this.readTodo(reader, pool, count));
+					break;
+				default:
+					this.skipElement(reader);
+			}
+		}
+		count.record();
+		TodoList todoList = new TodoList(Tracked.parseUuid(uuid), name, changeable);
+		for (Todo todo : todos) {
+			todoList.addTodo(todo);
+		}
+		return todoList;
+	}
+
+	/**
+	 * Read a user, the reader has to be positioned at the start of a 'user' element
+	 *
+	 * @param reader The reader
+	 * @param pool   Deduplicates the texts
+	 * @param count  Counts the records
+	 * @return The user containing all its TodoLists
+	 * @throws XMLStreamException
+	 * @throws InvalidDataException
+	 */
+	private User readUser(XMLStreamReader reader, StringPool pool, ImportCounter count) throws XMLStreamException, InvalidDataException {
+		String uuid = "";
+		String username = "";
+		String password = "";
+		String email = "";
+		List<TodoList> todoLists = new LinkedList<>();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch (reader.getLocalName()) {
+				case "uuid":
+					uuid = reader.getElementText();
+					break;
+				case "username":
+					username = pool.get(reader.getElementText());
+					break;
+				case "password":
+					password = reader.getElementText();
+					break;
+				case "email":
+					email = reader.getElementText();
+					break;
+				case "TodoList":
+					todoLists.add(this.readTodoList(reader, pool, count));
+					break;
+				default:
+					this.skipElement(reader);
+			}
+		}
+		count.record();
+		User user = new User(Tracked.parseUserUuid(uuid), username, password, email);
+		for (TodoList todoList : todoLists) {
+			user.addTodoList(todoList);
+		}
+		return user;
 	}
 
 	/**
 	 * Helper function to convert the xml to a map containing the user data
+	 * <p>
+	 * The data is read with a pull parser, the objects are created directly from the event stream. Equal texts share
+	 * one String, the pool is dropped after the import.
 	 *
 	 * @param stream InputStream containing XML data
 	 * @return The user object
@@ -203,78 +402,68 @@ public class XMLHandler implements ExportHandler {
 	 * @throws InvalidDataException
 	 */
 	private Map<String, User> doImport(InputStream stream) throws IOException, InvalidDataException {
-		// Temporary variables
+		ImportCounter count = new ImportCounter(stream, null);
+		return this.doImport(count, count);
+	}
+
+	/**
+	 * Helper function to convert the xml to a map containing the user data
+	 *
+	 * @param stream InputStream containing XML data
+	 * @param count  Counts the records, reports the progress
+	 * @return The user object
+	 * @throws IOException
+	 * @throws InvalidDataException
+	 */
+	private Map<String, User> doImport(InputStream stream, ImportCounter count) throws IOException, InvalidDataException {
 		TreeMap<String, User> users = new TreeMap<>();
-		User user;
-		TodoList todoList;
-		Todo todo;
+		StringPool pool = new StringPool();
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-
-			Document doc = docBuilder.parse(stream);
-			doc.getDocumentElement().normalize();
-
-			// the actual import ...
-			if (!"todolistapp".equals(doc.getDocumentElement().getNodeName())) {
+			reader = factory.createXMLStreamReader(stream);
+			if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"todolistapp".equals(reader.getLocalName())) {
 				throw new InvalidDataException("Expected 'todolistapp' as root node");
 			}
-
-			NodeList nUsers = doc.getElementsByTagName("user");
-			for (int i = 0; i < nUsers.getLength(); i++) {
-				Node nUser = nUsers.item(i);
-				if (nUser.getNodeType() == Node.ELEMENT_NODE) {
-					Element eUser = (Element) nUser;
-					user = new User(
-							this.elementGetString(eUser, "uuid"),
-							this.elementGetString(eUser, "username"),
-							this.elementGetString(eUser, "password"),
-							this.elementGetString(eUser, "email")
-					);
-					NodeList nTodoLists = eUser.getElementsByTagName("TodoList");
-					for (int j = 0; j < nTodoLists.getLength(); j++) {
-						Node nTodoList = nTodoLists.item(j);
-						if (nTodoList.getNodeType() == Node.ELEMENT_NODE) {
-							Element eTodoList = (Element) nTodoList;
-							todoList = new TodoList(
-									this.elementGetString(eTodoList, "uuid"),
-									this.elementGetString(eTodoList, "name"),
-									this.elementGetBool(eTodoList, "changeable", true)
-							);
-							NodeList nTodos = eTodoList.getElementsByTagName("item");
-							for (int k = 0; k < nTodos.getLength(); k++) {
-								Node nTodo = nTodos.item(k);
-								if (nTodo.getNodeType() == Node.ELEMENT_NODE) {
-									Element eTodo = (Element) nTodo;
-									// String uuid, String title, String comment, Calendar dueDate, boolean done, boolean prio
-									todo = new Todo(
-											this.elementGetString(eTodo, "uuid"),
-											this.elementGetString(eTodo, "title"),
-											this.elementGetString(eTodo, "comment"),
-											this.elementGetDate(eTodo, "duedate"),
-											this.elementGetBool(eTodo, "done", false),
-											this.elementGetBool(eTodo, "prio", false)
-									);
-									todoList.addTodo(todo);
-								}
-							}
-							user.addTodoList(todoList);
-						}
-					}
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if ("user".equals(reader.getLocalName())) {
+					User user = this.readUser(reader, pool, count);
 					users.put(user.getUsername(), user);
+				} else {
+					this.skipElement(reader);
 				}
 			}
-
-
-		} catch (ParserConfigurationException | SAXException e) {
+			count.report();
+			ErrorPrinter.printInfo("doImport > " + pool);
+		} catch (XMLStreamException e) {
 			e.printStackTrace();
+			throw new InvalidDataException("Invalid XML: " + e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 		return users;
 	}
 
 	public Map<String, User> importFromFile(File file) throws IOException, InvalidDataException {
-		InputStream inputStream = new FileInputStream(file);
-		return this.doImport(inputStream);
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+			return this.doImport(inputStream);
+		}
+	}
+
+	@Override
+	public Map<String, User> importFromFile(File file, Progress progress) throws IOException, InvalidDataException {
+		ImportCounter count = new ImportCounter(new FileInputStream(file), progress);
+		try (InputStream inputStream = new BufferedInputStream(count)) {
+			return this.doImport(inputStream, count);
+		}
 	}
 
 	public Map<String, User> importFromString(String str) throws InvalidDataException {